@@ -0,0 +1,78 @@
+package com.robotium.solo;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.Application.ActivityLifecycleCallbacks;
+import android.os.Bundle;
+
+/**
+ * Feeds the {@code ActivityRegistry} with the lifecycle events of the activities in the application under test.
+ * Requires API level 14.
+ */
+
+class ActivityLifecycleTracker implements ActivityLifecycleCallbacks {
+
+	private final Application application;
+	private final ActivityRegistry activityRegistry;
+
+
+	/**
+	 * Constructs this object.
+	 *
+	 * @param application the {@code Application} to track the activities of
+	 * @param activityRegistry the {@code ActivityRegistry} instance
+	 */
+
+	public ActivityLifecycleTracker(Application application, ActivityRegistry activityRegistry) {
+		this.application = application;
+		this.activityRegistry = activityRegistry;
+	}
+
+	/**
+	 * Starts receiving lifecycle events.
+	 */
+
+	public void start() {
+		application.registerActivityLifecycleCallbacks(this);
+	}
+
+	/**
+	 * Stops receiving lifecycle events.
+	 */
+
+	public void stop() {
+		application.unregisterActivityLifecycleCallbacks(this);
+	}
+
+	@Override
+	public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+		activityRegistry.pushCreated(activity);
+	}
+
+	@Override
+	public void onActivityStarted(Activity activity) {
+	}
+
+	@Override
+	public void onActivityResumed(Activity activity) {
+		activityRegistry.setResumed(activity, true);
+	}
+
+	@Override
+	public void onActivityPaused(Activity activity) {
+		activityRegistry.setResumed(activity, false);
+	}
+
+	@Override
+	public void onActivityStopped(Activity activity) {
+	}
+
+	@Override
+	public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+	}
+
+	@Override
+	public void onActivityDestroyed(Activity activity) {
+		activityRegistry.remove(activity);
+	}
+}
@@ -0,0 +1,305 @@
+package com.robotium.solo;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import android.app.Activity;
+import android.os.SystemClock;
+
+/**
+ * Keeps track of the opened activities in the order they were opened or resumed.
+ * Activities are looked up by identity and held weakly. The current activity, adding and removing are O(1).
+ * Threads waiting with {@link #waitForChange(long, long)} are notified on every change.
+ */
+
+class ActivityRegistry {
+
+	private final WeakHashMap<Activity, Entry> entries;
+	private Entry first;
+	private Entry last;
+	private long changeCount = 0;
+
+
+	/**
+	 * Constructs this object.
+	 */
+
+	public ActivityRegistry() {
+		entries = new WeakHashMap<Activity, Entry>();
+	}
+
+	/**
+	 * Adds an activity as the current activity. An activity that is already registered is moved to the top.
+	 *
+	 * @param activity the activity to add
+	 */
+
+	public synchronized void push(Activity activity) {
+		push(activity, 0);
+	}
+
+	/**
+	 * Adds a newly created activity as the current activity.
+	 *
+	 * @param activity the activity that was created
+	 */
+
+	public synchronized void pushCreated(Activity activity) {
+		push(activity, SystemClock.uptimeMillis());
+	}
+
+	private void push(Activity activity, long createdTime) {
+		Entry entry = entries.get(activity);
+
+		if(entry == null){
+			entry = new Entry(activity);
+			entry.createdTime = createdTime;
+			entries.put(activity, entry);
+		}
+		else {
+			unlink(entry);
+		}
+		link(entry);
+		changed();
+	}
+
+	/**
+	 * Removes an activity.
+	 *
+	 * @param activity the activity to remove
+	 * @return true if the activity was registered
+	 */
+
+	public synchronized boolean remove(Activity activity) {
+		Entry entry = entries.remove(activity);
+
+		if(entry == null){
+			return false;
+		}
+		unlink(entry);
+		changed();
+		return true;
+	}
+
+	/**
+	 * Returns true if an activity is registered.
+	 *
+	 * @param activity the activity to check
+	 * @return true if the activity is registered
+	 */
+
+	public synchronized boolean contains(Activity activity) {
+		return entries.containsKey(activity);
+	}
+
+	/**
+	 * Sets whether an activity is resumed. A resumed activity becomes the current activity.
+	 *
+	 * @param activity the activity that was resumed or paused
+	 * @param resumed true if the activity was resumed
+	 */
+
+	public synchronized void setResumed(Activity activity, boolean resumed) {
+		if(resumed){
+			push(activity);
+		}
+		Entry entry = entries.get(activity);
+
+		if(entry != null){
+			entry.resumed = resumed;
+			if(resumed && entry.resumedTime == 0){
+				entry.resumedTime = SystemClock.uptimeMillis();
+			}
+			changed();
+		}
+	}
+
+	/**
+	 * Returns the time in milliseconds between the creation of an activity and the first time it was resumed.
+	 *
+	 * @param activity the activity to check
+	 * @return the time in milliseconds or -1 if the activity has not been created and resumed while registered
+	 */
+
+	public synchronized long getResumeLatency(Activity activity) {
+		Entry entry = entries.get(activity);
+
+		if(entry == null || entry.createdTime == 0 || entry.resumedTime == 0){
+			return -1;
+		}
+		return entry.resumedTime - entry.createdTime;
+	}
+
+	/**
+	 * Returns true if an activity is resumed.
+	 *
+	 * @param activity the activity to check
+	 * @return true if the activity is registered and resumed
+	 */
+
+	public synchronized boolean isResumed(Activity activity) {
+		Entry entry = entries.get(activity);
+		return entry != null && entry.resumed;
+	}
+
+	/**
+	 * Returns the current activity.
+	 *
+	 * @return the current activity or {@code null} if there is none
+	 */
+
+	public synchronized Activity getCurrentActivity() {
+		pruneLast();
+		return (last == null) ? null : last.activity.get();
+	}
+
+	/**
+	 * Returns the name of the current activity, as given by {@code Activity.toString()}.
+	 *
+	 * @return the name of the current activity or {@code null} if there is none
+	 */
+
+	public synchronized String getCurrentActivityName() {
+		pruneLast();
+		return (last == null) ? null : last.name;
+	}
+
+	/**
+	 * Returns all registered activities, starting with the one that was opened first.
+	 *
+	 * @return a {@code List} of all the registered activities
+	 */
+
+	public synchronized ArrayList<Activity> getAllActivities() {
+		ArrayList<Activity> activities = new ArrayList<Activity>();
+
+		for(Entry entry = first; entry != null; entry = entry.next){
+			Activity activity = entry.activity.get();
+			if(activity != null){
+				activities.add(activity);
+			}
+		}
+		return activities;
+	}
+
+	/**
+	 * Returns true if no activities are registered.
+	 *
+	 * @return true if no activities are registered
+	 */
+
+	public synchronized boolean isEmpty() {
+		pruneLast();
+		return last == null;
+	}
+
+	/**
+	 * Removes all activities.
+	 */
+
+	public synchronized void clear() {
+		entries.clear();
+		first = null;
+		last = null;
+		changed();
+	}
+
+	/**
+	 * Returns the number of changes made so far. Used together with {@link #waitForChange(long, long)}.
+	 *
+	 * @return the number of changes made so far
+	 */
+
+	public synchronized long getChangeCount() {
+		return changeCount;
+	}
+
+	/**
+	 * Waits until a change is made after the given change count.
+	 *
+	 * @param sinceChangeCount the change count returned by {@link #getChangeCount()}
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return true if a change was made
+	 */
+
+	public synchronized boolean waitForChange(long sinceChangeCount, long timeout) {
+		final long endTime = SystemClock.uptimeMillis() + timeout;
+
+		while(changeCount == sinceChangeCount){
+			long timeLeft = endTime - SystemClock.uptimeMillis();
+			if(timeLeft <= 0){
+				return false;
+			}
+			try {
+				wait(timeLeft);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void changed() {
+		changeCount++;
+		notifyAll();
+	}
+
+	private void link(Entry entry) {
+		entry.previous = last;
+		entry.next = null;
+		if(last != null){
+			last.next = entry;
+		}
+		else {
+			first = entry;
+		}
+		last = entry;
+	}
+
+	private void unlink(Entry entry) {
+		if(entry.previous != null){
+			entry.previous.next = entry.next;
+		}
+		else {
+			first = entry.next;
+		}
+		if(entry.next != null){
+			entry.next.previous = entry.previous;
+		}
+		else {
+			last = entry.previous;
+		}
+		entry.previous = null;
+		entry.next = null;
+	}
+
+	/**
+	 * Removes activities at the top that have been garbage collected.
+	 */
+
+	private void pruneLast() {
+		while(last != null && last.activity.get() == null){
+			unlink(last);
+		}
+	}
+
+	/**
+	 * A registered activity in the order of activities.
+	 */
+
+	private static final class Entry {
+		final WeakReference<Activity> activity;
+		final String name;
+		boolean resumed = false;
+		long createdTime = 0;
+		long resumedTime = 0;
+		Entry previous;
+		Entry next;
+
+		Entry(Activity activity) {
+			this.activity = new WeakReference<Activity>(activity);
+			this.name = activity.toString();
+		}
+	}
+}
@@ -2,15 +2,16 @@ package com.robotium.solo;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Stack;
 import java.util.Timer;
 import com.robotium.solo.Solo.Config;
 import junit.framework.Assert;
 import android.app.Activity;
+import android.app.Application;
 import android.app.Instrumentation;
 import android.app.Instrumentation.ActivityMonitor;
+import android.content.Context;
 import android.content.IntentFilter;
+import android.os.Build;
 import android.os.SystemClock;
 import android.util.Log;
 import android.view.KeyEvent;
@@ -32,9 +33,8 @@ class ActivityUtils {
 	private final Sleeper sleeper;
 	private final String LOG_TAG = "Robotium";
 	private final int MINISLEEP = 100;
-	private Stack<WeakReference<Activity>> activityStack;
-	private WeakReference<Activity> weakActivityReference;
-	private Stack<String> activitiesStoredInActivityStack;
+	private final ActivityRegistry activityRegistry;
+	private ActivityLifecycleTracker activityLifecycleTracker;
 	private Timer activitySyncTimer;
 	private volatile boolean registerActivities;
 	Thread activityThread;
@@ -53,9 +53,9 @@ class ActivityUtils {
 		this.inst = inst;
 		this.activity = activity;
 		this.sleeper = sleeper;
+		this.activityRegistry = new ActivityRegistry();
 		createStackAndPushStartActivity();
 		activitySyncTimer = new Timer();
-		activitiesStoredInActivityStack = new Stack<String>();
 		setupActivityMonitor();
 		setupActivityStackListener();
 	}
@@ -67,11 +67,9 @@ class ActivityUtils {
 	 */
 
 	private void createStackAndPushStartActivity(){
-		activityStack = new Stack<WeakReference<Activity>>();
 		if (activity != null && config.trackActivities){
-			WeakReference<Activity> weakReference = new WeakReference<Activity>(activity);
+			activityRegistry.setResumed(activity, true);
 			activity = null;
-			activityStack.push(weakReference);
 		}
 	}
 	
@@ -84,15 +82,17 @@ class ActivityUtils {
 
 	public ArrayList<Activity> getAllOpenedActivities()
 	{
-		ArrayList<Activity> activities = new ArrayList<Activity>();
-		Iterator<WeakReference<Activity>> activityStackIterator = activityStack.iterator();
+		return activityRegistry.getAllActivities();
+	}
 
-		while(activityStackIterator.hasNext()){
-			Activity  activity = activityStackIterator.next().get();
-			if(activity!=null)
-				activities.add(activity);
-		}
-		return activities;
+	/**
+	 * Returns the {@code ActivityRegistry} that keeps track of the opened activities.
+	 * 
+	 * @return the {@code ActivityRegistry} instance
+	 */
+
+	public ActivityRegistry getActivityRegistry() {
+		return activityRegistry;
 	}
 
 	/**
@@ -135,7 +135,8 @@ class ActivityUtils {
 
 	/**
 	 * This is were the activityStack listener is set up. The listener will keep track of the
-	 * opened activities and their positions.
+	 * opened activities and their positions. Activity lifecycle callbacks are used if available,
+	 * otherwise a thread polls the activityMonitor.
 	 */
 
 	private void setupActivityStackListener() {
@@ -145,50 +146,75 @@ class ActivityUtils {
 
 		setRegisterActivities(true);
 
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH){
+			Application application = getApplication();
+			if(application != null){
+				activityLifecycleTracker = new ActivityLifecycleTracker(application, activityRegistry);
+				activityLifecycleTracker.start();
+				return;
+			}
+		}
+
 		activityThread = new RegisterActivitiesThread(this);
 		activityThread.start();
 	}
 
+	/**
+	 * Returns the {@code Application} under test.
+	 * 
+	 * @return the {@code Application} under test or {@code null} if it is not available
+	 */
 
-	void monitorActivities() {
-		if(activityMonitor != null){
-			Activity activity = activityMonitor.waitForActivityWithTimeout(2000L);
-
-			if(activity != null){
-				if (activitiesStoredInActivityStack.remove(activity.toString())){
-					removeActivityFromStack(activity);
-				}
-				if(!activity.isFinishing()){
-					addActivityToStack(activity);
-				}
+	private Application getApplication() {
+		try {
+			Context context = inst.getTargetContext().getApplicationContext();
+			if(context instanceof Application){
+				return (Application) context;
 			}
+		} catch (Exception e) {
+			e.printStackTrace();
 		}
+		return null;
 	}
 
+	/**
+	 * Returns true if the opened activities are tracked with activity lifecycle callbacks.
+	 * 
+	 * @return true if the opened activities are tracked with activity lifecycle callbacks
+	 */
 
+	public boolean isTrackingLifecycle() {
+		return activityLifecycleTracker != null;
+	}
 
 	/**
-	 * Removes a given activity from the activity stack
-	 * 
-	 * @param activity the activity to remove
+	 * Stops the activityStack listener.
 	 */
 
-	private void removeActivityFromStack(Activity activity){
+	private void stopActivityStackListener() {
+		setRegisterActivities(false);
+		if(activityLifecycleTracker != null){
+			activityLifecycleTracker.stop();
+			activityLifecycleTracker = null;
+		}
+	}
 
-		Iterator<WeakReference<Activity>> activityStackIterator = activityStack.iterator();
-		while(activityStackIterator.hasNext()){
-			Activity activityFromWeakReference = activityStackIterator.next().get();
 
-			if(activityFromWeakReference == null){
-				activityStackIterator.remove();
-			}
+	void monitorActivities() {
+		if(activityMonitor != null){
+			Activity activity = activityMonitor.waitForActivityWithTimeout(2000L);
 
-			if(activity != null && activityFromWeakReference != null && activityFromWeakReference.equals(activity)){
-				activityStackIterator.remove();
+			if(activity != null){
+				activityRegistry.remove(activity);
+				if(!activity.isFinishing()){
+					addActivityToStack(activity);
+				}
 			}
 		}
 	}
 
+
+
 	/**
 	 * Returns the ActivityMonitor used by Robotium.
 	 * 
@@ -241,10 +267,21 @@ class ActivityUtils {
 	 */
 
 	private void addActivityToStack(Activity activity){
-		activitiesStoredInActivityStack.push(activity.toString());
-		weakActivityReference = new WeakReference<Activity>(activity);
-		activity = null;
-		activityStack.push(weakActivityReference);
+		activityRegistry.push(activity);
+	}
+
+	/**
+	 * Checks if an activity is finishing or destroyed.
+	 *
+	 * @param activity the activity to check
+	 * @return true if the activity is finishing or destroyed
+	 */
+
+	private boolean isFinishingOrDestroyed(Activity activity){
+		if(activity.isFinishing()){
+			return true;
+		}
+		return Build.VERSION.SDK_INT >= 17 && activity.isDestroyed();
 	}
 
 	/**
@@ -253,12 +290,13 @@ class ActivityUtils {
 	 */
 
 	private final void waitForActivityIfNotAvailable(){
-		if(activityStack.isEmpty() || activityStack.peek().get() == null){
+		if(activityRegistry.isEmpty()){
 
 			if (activityMonitor != null) {
 				Activity activity = activityMonitor.getLastActivity();
-				while (activity == null){
-					sleeper.sleepMini();
+				final Sleeper.Backoff backoff = sleeper.backoff(MINISLEEP);
+				while (activity == null || isFinishingOrDestroyed(activity)){
+					backoff.sleepMini();
 					activity = activityMonitor.getLastActivity();
 				}
 				addActivityToStack(activity);
@@ -278,8 +316,9 @@ class ActivityUtils {
 	 */
 	
 	public String getCurrentActivityName(){
-		if(!activitiesStoredInActivityStack.isEmpty()){
-			return activitiesStoredInActivityStack.peek();
+		String name = activityRegistry.getCurrentActivityName();
+		if(name != null){
+			return name;
 		}
 		return "";
 	}
@@ -303,8 +342,8 @@ class ActivityUtils {
 		if(waitForActivity){
 			waitForActivityIfNotAvailable();
 		}
-		if(!activityStack.isEmpty()){
-			activity=activityStack.peek().get();
+		if(!activityRegistry.isEmpty()){
+			activity = activityRegistry.getCurrentActivity();
 		}
 		return activity;
 	}
@@ -316,7 +355,7 @@ class ActivityUtils {
 	 */
 	
 	public boolean isActivityStackEmpty() {
-		return activityStack.isEmpty();
+		return activityRegistry.isEmpty();
 	}
 
 	/**
@@ -374,6 +413,7 @@ class ActivityUtils {
 	@Override
 	public void finalize() throws Throwable {
 		activitySyncTimer.cancel();
+		stopActivityStackListener();
 		stopActivityMonitor();
 		super.finalize();
 	}
@@ -414,7 +454,7 @@ class ActivityUtils {
 		// Finish the initial activity, pressing Back for good measure
 		finishActivity(getCurrentActivity(true, false));
 		stopActivityMonitor();
-		setRegisterActivities(false);
+		stopActivityStackListener();
 		this.activity = null;
 		sleeper.sleepMini();
 		useGoBack(1);
@@ -445,8 +485,7 @@ class ActivityUtils {
 
 	private void clearActivityStack(){
 		
-		activityStack.clear();
-		activitiesStoredInActivityStack.clear();
+		activityRegistry.clear();
 	}
 
 	/**
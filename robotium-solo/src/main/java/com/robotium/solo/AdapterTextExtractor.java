@@ -0,0 +1,19 @@
+package com.robotium.solo;
+
+import android.widget.Adapter;
+
+/**
+ * Returns the text that a list item will show, without the item being shown.<br/>
+ * Implementations may be set in {@link Solo.Config#adapterTextExtractor}. Used when {@link Solo.Config#searchListAdapters} is {@code true}.
+ */
+public interface AdapterTextExtractor {
+
+	/**
+	 * Returns the text of an item of an adapter. Called on the main thread.
+	 * @param adapter the adapter of the list
+	 * @param position the position of the item in the adapter
+	 * @return the text that the item will show or {@code null} if it is not known
+	 */
+	public String getText(Adapter adapter, int position);
+
+}
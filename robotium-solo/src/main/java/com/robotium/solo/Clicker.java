@@ -6,6 +6,7 @@ import java.util.Collection;
 import java.util.List;
 
 import junit.framework.Assert;
+import com.robotium.solo.Solo.Config;
 import android.app.Activity;
 import android.app.Instrumentation;
 import android.content.Context;
@@ -32,6 +33,7 @@ import android.widget.TextView;
 class Clicker {
 
 	private final String LOG_TAG = "Robotium";
+	private final Config config;
 	private final ActivityUtils activityUtils;
 	private final ViewFetcher viewFetcher;
 	private final Instrumentation inst;
@@ -40,6 +42,7 @@ class Clicker {
 	private final Waiter waiter;
 	private final WebUtils webUtils;
 	private final DialogUtils dialogUtils;
+	private final IdleSynchronizer idleSynchronizer;
 	private final int MINI_WAIT = 300;
 	private final int WAIT_TIME = 1500;
 
@@ -47,6 +50,7 @@ class Clicker {
 	/**
 	 * Constructs this object.
 	 *
+	 * @param config the {@code Config} instance
 	 * @param activityUtils the {@code ActivityUtils} instance
 	 * @param viewFetcher the {@code ViewFetcher} instance
 	 * @param sender the {@code Sender} instance
@@ -55,10 +59,12 @@ class Clicker {
 	 * @param waiter the {@code Waiter} instance
 	 * @param webUtils the {@code WebUtils} instance
 	 * @param dialogUtils the {@code DialogUtils} instance
+	 * @param idleSynchronizer the {@code IdleSynchronizer} instance
 	 */
 
-	public Clicker(ActivityUtils activityUtils, ViewFetcher viewFetcher, Sender sender, Instrumentation inst, Sleeper sleeper, Waiter waiter, WebUtils webUtils, DialogUtils dialogUtils) {
+	public Clicker(Config config, ActivityUtils activityUtils, ViewFetcher viewFetcher, Sender sender, Instrumentation inst, Sleeper sleeper, Waiter waiter, WebUtils webUtils, DialogUtils dialogUtils, IdleSynchronizer idleSynchronizer) {
 
+		this.config = config;
 		this.activityUtils = activityUtils;
 		this.viewFetcher = viewFetcher;
 		this.sender = sender;
@@ -67,6 +73,40 @@ class Clicker {
 		this.waiter = waiter;
 		this.webUtils = webUtils;
 		this.dialogUtils = dialogUtils;
+		this.idleSynchronizer = idleSynchronizer;
+	}
+
+	/**
+	 * Pauses before or after an action. If {@link Config#syncWithMainLooper} is {@code true}
+	 * the pause ends as soon as the main looper is idle and the views are laid out and drawn,
+	 * otherwise the given time is slept.
+	 *
+	 * @param time the length of the pause in milliseconds
+	 */
+
+	private void settle(int time) {
+		settle(time, null);
+	}
+
+	/**
+	 * Pauses in a retry loop. If {@link Config#syncWithMainLooper} is {@code true}
+	 * the pause ends as soon as the main looper is idle and the views are laid out and drawn,
+	 * otherwise the backoff of the loop sleeps at most the given time.
+	 *
+	 * @param time the length of the pause in milliseconds
+	 * @param backoff the {@code Sleeper.Backoff} of the loop or {@code null} to sleep the given time
+	 */
+
+	private void settle(int time, Sleeper.Backoff backoff) {
+		if(config.syncWithMainLooper){
+			idleSynchronizer.waitForIdle(config.syncTimeout);
+		}
+		else if(backoff != null){
+			backoff.sleep(time);
+		}
+		else {
+			sleeper.sleep(time);
+		}
 	}
 
 	/**
@@ -80,6 +120,7 @@ class Clicker {
 		boolean successfull = false;
 		int retry = 0;
 		SecurityException ex = null;
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
 		while(!successfull && retry < 20) {
 			long downTime = SystemClock.uptimeMillis();
@@ -95,7 +136,7 @@ class Clicker {
 			}catch(SecurityException e){
 				ex = e;
 				dialogUtils.hideSoftKeyboard(null, false, true);
-				sleeper.sleep(MINI_WAIT);
+				backoff.sleep(MINI_WAIT);
 				retry++;
 				View identicalView = viewFetcher.getIdenticalView(view);
 				if(identicalView != null){
@@ -125,6 +166,7 @@ class Clicker {
 		long downTime = SystemClock.uptimeMillis();
 		long eventTime = SystemClock.uptimeMillis();
 		MotionEvent event = MotionEvent.obtain(downTime, eventTime, MotionEvent.ACTION_DOWN, x, y, 0);
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
 		while(!successfull && retry < 20) {
 			try{
@@ -134,7 +176,7 @@ class Clicker {
 			}catch(SecurityException e){
 				ex = e;
 				dialogUtils.hideSoftKeyboard(null, false, true);
-				sleeper.sleep(MINI_WAIT);
+				backoff.sleep(MINI_WAIT);
 				retry++;
 				View identicalView = viewFetcher.getIdenticalView(view);
 				if(identicalView != null){
@@ -159,7 +201,7 @@ class Clicker {
 		eventTime = SystemClock.uptimeMillis();
 		event = MotionEvent.obtain(downTime, eventTime, MotionEvent.ACTION_UP, x, y, 0);
 		inst.sendPointerSync(event);
-		sleeper.sleep();
+		settle(config.sleepDuration);
 	}
 
 
@@ -202,13 +244,55 @@ class Clicker {
 			}
 		}
 
-		sleeper.sleep(300);
+		settle(300);
+		if(config.verifyClickTargets){
+			verifyClickTarget(view, x, y);
+		}
 		if (longClick)
 			clickLongOnScreen(x, y, time, view);
 		else
 			clickOnScreen(x, y, view);
 	}	
 
+	/**
+	 * Fails if a click at the given location would be received by a view that is neither the view,
+	 * a view inside it nor one of its parents. Only views that can receive touches are considered,
+	 * since a touch passes through the others.
+	 *
+	 * @param view the view that should be clicked
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 */
+
+	private void verifyClickTarget(View view, float x, float y) {
+		if(view == null){
+			return;
+		}
+		final View target = viewFetcher.getViewAt((int) x, (int) y, true);
+
+		if(target == null || isInside(target, view) || isInside(view, target)){
+			return;
+		}
+		Assert.fail("Click at ("+x+", "+y+") on "+view+" would be received by "+target+"!");
+	}
+
+	/**
+	 * Returns true if a view is the given parent or a view inside it.
+	 *
+	 * @param view the view to check
+	 * @param parent the parent
+	 * @return true if the view is the parent or inside it
+	 */
+
+	private boolean isInside(View view, View parent) {
+		for(Object current = view; current instanceof View; current = ((View) current).getParent()){
+			if(current == parent){
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Returns click coordinates for the specified view.
 	 * 
@@ -220,10 +304,11 @@ class Clicker {
 		int[] xyLocation = new int[2];
 		float[] xyToClick = new float[2];
 		int trialCount = 0;
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
 		view.getLocationOnScreen(xyLocation);
 		while(xyLocation[0] == 0 && xyLocation[1] == 0 && trialCount < 10) {
-			sleeper.sleep(300);
+			settle(300, backoff);
 			view.getLocationOnScreen(xyLocation);
 			trialCount++;
 		}
@@ -252,19 +337,25 @@ class Clicker {
 
 	public void clickLongOnTextAndPress(String text, int index)
 	{
-		clickOnText(text, true, 0, true, 0);
-		dialogUtils.waitForDialogToOpen(Timeout.getSmallTimeout(), true);
-		try{
-			inst.sendKeyDownUpSync(KeyEvent.KEYCODE_DPAD_DOWN);
-		}catch(SecurityException e){
-			Assert.fail("Can not press the context menu!");
-		}
-		for(int i = 0; i < index; i++)
-		{
-			sleeper.sleepMini();
-			inst.sendKeyDownUpSync(KeyEvent.KEYCODE_DPAD_DOWN);
+		Deadline deadline = Deadline.start(Timeout.getSmallTimeout());
+		try {
+			clickOnText(text, true, 0, true, 0);
+			dialogUtils.waitForDialogToOpen(Timeout.getSmallTimeout(), true);
+			try{
+				inst.sendKeyDownUpSync(KeyEvent.KEYCODE_DPAD_DOWN);
+			}catch(SecurityException e){
+				Assert.fail("Can not press the context menu!");
+			}
+			for(int i = 0; i < index; i++)
+			{
+				sleeper.sleepMini();
+				inst.sendKeyDownUpSync(KeyEvent.KEYCODE_DPAD_DOWN);
+			}
+			inst.sendKeyDownUpSync(KeyEvent.KEYCODE_ENTER);
+		}
+		finally {
+			deadline.finish();
 		}
-		inst.sendKeyDownUpSync(KeyEvent.KEYCODE_ENTER);
 	}
 
 	/**
@@ -292,8 +383,14 @@ class Clicker {
 
 	public void clickOnMenuItem(String text)
 	{
-		openMenu();
-		clickOnText(text, false, 1, true, 0);
+		Deadline deadline = Deadline.start(Timeout.getSmallTimeout());
+		try {
+			openMenu();
+			clickOnText(text, false, 1, true, 0);
+		}
+		finally {
+			deadline.finish();
+		}
 	}
 
 	/**
@@ -305,37 +402,43 @@ class Clicker {
 
 	public void clickOnMenuItem(String text, boolean subMenu)
 	{
-		sleeper.sleepMini();
-
-		TextView textMore = null;
-		int [] xy = new int[2];
-		int x = 0;
-		int y = 0;
+		Deadline deadline = Deadline.start(Timeout.getSmallTimeout());
+		try {
+			sleeper.sleepMini();
 
-		if(!dialogUtils.waitForDialogToOpen(MINI_WAIT, false)) {
-			try{
-				sender.sendKeyCode(KeyEvent.KEYCODE_MENU);
-				dialogUtils.waitForDialogToOpen(WAIT_TIME, true);
-			}catch(SecurityException e){
-				Assert.fail("Can not open the menu!");
+			TextView textMore = null;
+			int [] xy = new int[2];
+			int x = 0;
+			int y = 0;
+
+			if(!dialogUtils.waitForDialogToOpen(MINI_WAIT, false)) {
+				try{
+					sender.sendKeyCode(KeyEvent.KEYCODE_MENU);
+					dialogUtils.waitForDialogToOpen(WAIT_TIME, true);
+				}catch(SecurityException e){
+					Assert.fail("Can not open the menu!");
+				}
 			}
-		}
-		boolean textShown = waiter.waitForText(text, 1, WAIT_TIME, true) != null;
+			boolean textShown = waiter.waitForText(text, 1, WAIT_TIME, true) != null;
 
-		if(subMenu && (viewFetcher.getCurrentViews(TextView.class, true).size() > 5) && !textShown){
-			for(TextView textView : viewFetcher.getCurrentViews(TextView.class, true)){
-				x = xy[0];
-				y = xy[1];
-				textView.getLocationOnScreen(xy);
+			if(subMenu && (viewFetcher.getCurrentViews(TextView.class, true).size() > 5) && !textShown){
+				for(TextView textView : viewFetcher.getCurrentViews(TextView.class, true)){
+					x = xy[0];
+					y = xy[1];
+					textView.getLocationOnScreen(xy);
 
-				if(xy[0] > x || xy[1] > y)
-					textMore = textView;
+					if(xy[0] > x || xy[1] > y)
+						textMore = textView;
+				}
 			}
-		}
-		if(textMore != null)
-			clickOnScreen(textMore);
+			if(textMore != null)
+				clickOnScreen(textMore);
 
-		clickOnText(text, false, 1, true, 0);
+			clickOnText(text, false, 1, true, 0);
+		}
+		finally {
+			deadline.finish();
+		}
 	}
 
 	/**
@@ -345,8 +448,8 @@ class Clicker {
 	 */
 
 	public void clickOnActionBarItem(int resourceId){
-		sleeper.sleep();
-		Activity activity = activityUtils.getCurrentActivity();
+		settle(config.sleepDuration);
+		Activity activity = activityUtils.getCurrentActivity(!config.syncWithMainLooper);
 		if(activity != null){
 			inst.invokeMenuActionSync(activity, resourceId, 0);
 		}
@@ -399,29 +502,35 @@ class Clicker {
 	 */
 
 	public void clickOnWebElement(By by, int match, boolean scroll, boolean useJavaScriptToClick){
-		WebElement webElement = null;
+		Deadline deadline = Deadline.start(Timeout.getSmallTimeout());
+		try {
+			WebElement webElement = null;
 		
-		if(useJavaScriptToClick){
-			webElement = waiter.waitForWebElement(by, match, Timeout.getSmallTimeout(), false);
-			if(webElement == null){
-				Assert.fail("WebElement with " + webUtils.splitNameByUpperCase(by.getClass().getSimpleName()) + ": '" + by.getValue() + "' is not found!");
+			if(useJavaScriptToClick){
+				webElement = waiter.waitForWebElement(by, match, Timeout.getSmallTimeout(), false);
+				if(webElement == null){
+					Assert.fail("WebElement with " + webUtils.splitNameByUpperCase(by.getClass().getSimpleName()) + ": '" + by.getValue() + "' is not found!");
+				}
+				webUtils.executeJavaScript(by, true);
+				return;
 			}
-			webUtils.executeJavaScript(by, true);
-			return;
-		}
 		
-		WebElement webElementToClick = waiter.waitForWebElement(by, match, Timeout.getSmallTimeout(), scroll);
+			WebElement webElementToClick = waiter.waitForWebElement(by, match, Timeout.getSmallTimeout(), scroll);
 		
-		if(webElementToClick == null){
-			if(match > 1) {
-				Assert.fail(match + " WebElements with " + webUtils.splitNameByUpperCase(by.getClass().getSimpleName()) + ": '" + by.getValue() + "' are not found!");
-			}
-			else {
-				Assert.fail("WebElement with " + webUtils.splitNameByUpperCase(by.getClass().getSimpleName()) + ": '" + by.getValue() + "' is not found!");
+			if(webElementToClick == null){
+				if(match > 1) {
+					Assert.fail(match + " WebElements with " + webUtils.splitNameByUpperCase(by.getClass().getSimpleName()) + ": '" + by.getValue() + "' are not found!");
+				}
+				else {
+					Assert.fail("WebElement with " + webUtils.splitNameByUpperCase(by.getClass().getSimpleName()) + ": '" + by.getValue() + "' is not found!");
+				}
 			}
-		}
 		
-		clickOnScreen(webElementToClick.getLocationX(), webElementToClick.getLocationY(), null);
+			clickOnScreen(webElementToClick.getLocationX(), webElementToClick.getLocationY(), null);
+		}
+		finally {
+			deadline.finish();
+		}
 	}
 
 
@@ -436,29 +545,35 @@ class Clicker {
 	 */
 
 	public void clickOnText(String regex, boolean longClick, int match, boolean scroll, int time) {
-		TextView textToClick = waiter.waitForText(regex, match, Timeout.getSmallTimeout(), scroll, true, false);
+		Deadline deadline = Deadline.start(Timeout.getSmallTimeout());
+		try {
+			TextView textToClick = waiter.waitForText(regex, match, Timeout.getSmallTimeout(), scroll, true, false);
 
-		if (textToClick != null) {
-			clickOnScreen(textToClick, longClick, time);
-		}
+			if (textToClick != null) {
+				clickOnScreen(textToClick, longClick, time);
+			}
 
-		else {
+			else {
 
-			if(match > 1){
-				Assert.fail(match + " matches of text string: '" + regex +  "' are not found!");
-			}
+				if(match > 1){
+					Assert.fail(match + " matches of text string: '" + regex +  "' are not found!");
+				}
 
-			else{
-				ArrayList<TextView> allTextViews = RobotiumUtils.removeInvisibleViews(viewFetcher.getCurrentViews(TextView.class, true));
-				allTextViews.addAll((Collection<? extends TextView>) webUtils.getTextViewsFromWebView());
+				else{
+					ArrayList<TextView> allTextViews = RobotiumUtils.removeInvisibleViews(viewFetcher.getCurrentViews(TextView.class, true));
+					allTextViews.addAll((Collection<? extends TextView>) webUtils.getTextViewsFromWebView());
 
-				for (TextView textView : allTextViews) {
-					Log.d(LOG_TAG, "'" + regex + "' not found. Have found: '" + textView.getText() + "'");
+					for (TextView textView : allTextViews) {
+						Log.d(LOG_TAG, "'" + regex + "' not found. Have found: '" + textView.getText() + "'");
+					}
+					allTextViews = null;
+					Assert.fail("Text string: '" + regex + "' is not found!");
 				}
-				allTextViews = null;
-				Assert.fail("Text string: '" + regex + "' is not found!");
 			}
 		}
+		finally {
+			deadline.finish();
+		}
 	}
 
 
@@ -470,17 +585,23 @@ class Clicker {
 	 */
 
 	public <T extends TextView> void clickOn(Class<T> viewClass, String nameRegex) {
-		T viewToClick = (T) waiter.waitForText(viewClass, nameRegex, 0, Timeout.getSmallTimeout(), true, true, false);
+		Deadline deadline = Deadline.start(Timeout.getSmallTimeout());
+		try {
+			T viewToClick = (T) waiter.waitForText(viewClass, nameRegex, 0, Timeout.getSmallTimeout(), true, true, false);
 
-		if (viewToClick != null) {
-			clickOnScreen(viewToClick);
-		} else {
-			ArrayList <T> allTextViews = RobotiumUtils.removeInvisibleViews(viewFetcher.getCurrentViews(viewClass, true));
+			if (viewToClick != null) {
+				clickOnScreen(viewToClick);
+			} else {
+				ArrayList <T> allTextViews = RobotiumUtils.removeInvisibleViews(viewFetcher.getCurrentViews(viewClass, true));
 
-			for (T view : allTextViews) {
-				Log.d(LOG_TAG, "'" + nameRegex + "' not found. Have found: '" + view.getText() + "'");
+				for (T view : allTextViews) {
+					Log.d(LOG_TAG, "'" + nameRegex + "' not found. Have found: '" + view.getText() + "'");
+				}
+				Assert.fail(viewClass.getSimpleName() + " with text: '" + nameRegex + "' is not found!");
 			}
-			Assert.fail(viewClass.getSimpleName() + " with text: '" + nameRegex + "' is not found!");
+		}
+		finally {
+			deadline.finish();
 		}
 	}
 
@@ -492,7 +613,13 @@ class Clicker {
 	 */
 
 	public <T extends View> void clickOn(Class<T> viewClass, int index) {
-		clickOnScreen(waiter.waitForAndGetView(index, viewClass));
+		Deadline deadline = Deadline.start(Timeout.getSmallTimeout());
+		try {
+			clickOnScreen(waiter.waitForAndGetView(index, viewClass));
+		}
+		finally {
+			deadline.finish();
+		}
 	}
 
 
@@ -530,34 +657,40 @@ class Clicker {
 	 */
 
 	public ArrayList<TextView> clickInList(int line, int index, int id, boolean longClick, int time) {
-		final long endTime = SystemClock.uptimeMillis() + Timeout.getSmallTimeout();
+		Deadline deadline = Deadline.start(Timeout.getSmallTimeout());
+		try {
+			final long endTime = Deadline.getEndTime(Timeout.getSmallTimeout());
 
-		int lineIndex = line - 1;
-		if(lineIndex < 0)
-			lineIndex = 0;
+			int lineIndex = line - 1;
+			if(lineIndex < 0)
+				lineIndex = 0;
 
-		ArrayList<View> views = new ArrayList<View>();
-		final AbsListView absListView = waiter.waitForAndGetView(index, AbsListView.class);
+			ArrayList<View> views = new ArrayList<View>();
+			final AbsListView absListView = waiter.waitForAndGetView(index, AbsListView.class);
 
-		if(absListView == null)
-			Assert.fail("AbsListView is null!");
+			if(absListView == null)
+				Assert.fail("AbsListView is null!");
 
-		failIfIndexHigherThenChildCount(absListView, lineIndex, endTime);
+			failIfIndexHigherThenChildCount(absListView, lineIndex, endTime);
 
-		View viewOnLine = getViewOnAbsListLine(absListView, index, lineIndex);
+			View viewOnLine = getViewOnAbsListLine(absListView, index, lineIndex);
 
-		if(viewOnLine != null){
-			views = viewFetcher.getViews(viewOnLine, true);
-			views = RobotiumUtils.removeInvisibleViews(views);
+			if(viewOnLine != null){
+				views = viewFetcher.getViews(viewOnLine, true);
+				views = RobotiumUtils.removeInvisibleViews(views);
 
-			if(id == 0){
-				clickOnScreen(viewOnLine, longClick, time);
-			}
-			else{
-				clickOnScreen(getView(id, views));
+				if(id == 0){
+					clickOnScreen(viewOnLine, longClick, time);
+				}
+				else{
+					clickOnScreen(getView(id, views));
+				}
 			}
+			return RobotiumUtils.filterViews(TextView.class, views);
+		}
+		finally {
+			deadline.finish();
 		}
-		return RobotiumUtils.filterViews(TextView.class, views);
 	}
 	
 	/**
@@ -595,35 +728,41 @@ class Clicker {
 	 */
 
 	public ArrayList<TextView> clickInRecyclerView(int itemIndex, int recyclerViewIndex, int id, boolean longClick, int time) {
-		View viewOnLine = null;
-		final long endTime = SystemClock.uptimeMillis() + Timeout.getSmallTimeout();
+		Deadline deadline = Deadline.start(Timeout.getSmallTimeout());
+		try {
+			View viewOnLine = null;
+			final long endTime = Deadline.getEndTime(Timeout.getSmallTimeout());
 
-		if(itemIndex < 0)
-			itemIndex = 0;
+			if(itemIndex < 0)
+				itemIndex = 0;
 
-		ArrayList<View> views = new ArrayList<View>();
-		ViewGroup recyclerView = viewFetcher.getRecyclerView(recyclerViewIndex, Timeout.getSmallTimeout());
+			ArrayList<View> views = new ArrayList<View>();
+			ViewGroup recyclerView = viewFetcher.getRecyclerView(recyclerViewIndex, Timeout.getSmallTimeout());
 		
-		if(recyclerView == null){
-			Assert.fail("RecyclerView is not found!");
-		}
-		else{
-			failIfIndexHigherThenChildCount(recyclerView, itemIndex, endTime);
-			viewOnLine = getViewOnRecyclerItemIndex((ViewGroup) recyclerView, recyclerViewIndex, itemIndex);
-		}
-		
-		if(viewOnLine != null){
-			views = viewFetcher.getViews(viewOnLine, true);
-			views = RobotiumUtils.removeInvisibleViews(views);
-			
-			if(id == 0){
-				clickOnScreen(viewOnLine, longClick, time);
+			if(recyclerView == null){
+				Assert.fail("RecyclerView is not found!");
 			}
 			else{
-				clickOnScreen(getView(id, views));
+				failIfIndexHigherThenChildCount(recyclerView, itemIndex, endTime);
+				viewOnLine = getViewOnRecyclerItemIndex((ViewGroup) recyclerView, recyclerViewIndex, itemIndex);
 			}
+		
+			if(viewOnLine != null){
+				views = viewFetcher.getViews(viewOnLine, true);
+				views = RobotiumUtils.removeInvisibleViews(views);
+			
+				if(id == 0){
+					clickOnScreen(viewOnLine, longClick, time);
+				}
+				else{
+					clickOnScreen(getView(id, views));
+				}
+			}
+			return RobotiumUtils.filterViews(TextView.class, views);
+		}
+		finally {
+			deadline.finish();
 		}
-		return RobotiumUtils.filterViews(TextView.class, views);
 	}
 	
 	private View getView(int id, List<View> views){
@@ -657,7 +796,7 @@ class Clicker {
 	 */
 
 	private View getViewOnAbsListLine(AbsListView absListView, int index, int lineIndex){
-		final long endTime = SystemClock.uptimeMillis() + Timeout.getSmallTimeout();
+		final long endTime = Deadline.getEndTime(Timeout.getSmallTimeout());
 		View view = absListView.getChildAt(lineIndex);
 
 		while(view == null){
@@ -687,7 +826,7 @@ class Clicker {
 	 */
 
 	private View getViewOnRecyclerItemIndex(ViewGroup recyclerView, int recyclerViewIndex, int itemIndex){
-		final long endTime = SystemClock.uptimeMillis() + Timeout.getSmallTimeout();
+		final long endTime = Deadline.getEndTime(Timeout.getSmallTimeout());
 		View view = recyclerView.getChildAt(itemIndex);
 
 		while(view == null){
@@ -0,0 +1,222 @@
+package com.robotium.solo;
+
+import junit.framework.AssertionFailedError;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import com.robotium.solo.Solo.Config;
+
+
+/**
+ * Watches the application under test for fatal errors so that the wait loops can fail at once
+ * instead of waiting for their timeouts. A fatal error is an uncaught exception on any thread,
+ * a main thread that has not processed a message for {@link Config#stallTimeout} milliseconds
+ * or an activity stack that has been empty for as long. An uncaught exception that no wait loop
+ * has failed with makes {@link #stop()} fail.
+ */
+
+class CrashWatcher {
+
+	private static final String LOG_TAG = "Robotium";
+	private final Config config;
+	private final ActivityUtils activityUtils;
+	private final Handler mainHandler;
+	private final Runnable ping;
+	private final UncaughtExceptionHandler uncaughtExceptionHandler;
+	private Thread.UncaughtExceptionHandler previousHandler;
+	private volatile Throwable uncaughtThrowable;
+	private volatile String uncaughtThreadName;
+	private volatile boolean uncaughtReported = false;
+	private volatile long pingPostedTime = 0;
+	private volatile boolean started = false;
+	private long emptySince = 0;
+
+
+	/**
+	 * Constructs this object.
+	 *
+	 * @param config the {@code Config} instance
+	 * @param activityUtils the {@code ActivityUtils} instance
+	 */
+
+	public CrashWatcher(Config config, ActivityUtils activityUtils) {
+		this.config = config;
+		this.activityUtils = activityUtils;
+		this.mainHandler = new Handler(Looper.getMainLooper());
+		this.ping = new Runnable() {
+			public void run() {
+				pingPostedTime = 0;
+			}
+		};
+		this.uncaughtExceptionHandler = new UncaughtExceptionHandler();
+	}
+
+	/**
+	 * Starts watching. The default uncaught exception handler is replaced by one that logs and
+	 * records the exception. Exceptions of the main thread are passed on to the previous handler,
+	 * exceptions of other threads are not, since the default handler of Android ends the process
+	 * and the wait methods would never see the exception. The thread that threw it still terminates.
+	 * A handler left installed by a watcher that was never stopped is replaced, not wrapped.
+	 */
+
+	public synchronized void start() {
+		if(started){
+			return;
+		}
+		uncaughtThrowable = null;
+		uncaughtThreadName = null;
+		uncaughtReported = false;
+		pingPostedTime = 0;
+		emptySince = 0;
+
+		Thread.UncaughtExceptionHandler currentHandler = Thread.getDefaultUncaughtExceptionHandler();
+		while(currentHandler instanceof UncaughtExceptionHandler){
+			currentHandler = ((UncaughtExceptionHandler) currentHandler).getPreviousHandler();
+		}
+		previousHandler = currentHandler;
+		Thread.setDefaultUncaughtExceptionHandler(uncaughtExceptionHandler);
+		started = true;
+	}
+
+	/**
+	 * Stops watching and restores the default uncaught exception handler.
+	 *
+	 * @throws AssertionFailedError if an uncaught exception was recorded that no wait method has failed with
+	 */
+
+	public synchronized void stop() {
+		if(!started){
+			return;
+		}
+		if(Thread.getDefaultUncaughtExceptionHandler() == uncaughtExceptionHandler){
+			Thread.setDefaultUncaughtExceptionHandler(previousHandler);
+		}
+		started = false;
+
+		final Throwable throwable = uncaughtThrowable;
+		if(throwable != null && !uncaughtReported){
+			uncaughtReported = true;
+			fail("The application has crashed with an uncaught exception in thread '" + uncaughtThreadName + "': " + throwable, throwable);
+		}
+	}
+
+	/**
+	 * Fails if a fatal error has been seen in the application under test. Called by the wait loops
+	 * before each check.
+	 *
+	 * @throws AssertionFailedError if the application has crashed, stalled or finished all its activities
+	 */
+
+	public void checkForFatalError() {
+		if(!started){
+			return;
+		}
+
+		final Throwable throwable = uncaughtThrowable;
+		if(throwable != null){
+			uncaughtReported = true;
+			fail("The application has crashed with an uncaught exception in thread '" + uncaughtThreadName + "': " + throwable, throwable);
+		}
+
+		final long now = SystemClock.uptimeMillis();
+		checkMainThread(now);
+		checkActivityStack(now);
+	}
+
+	/**
+	 * Fails if a message posted to the main thread has not been processed within the stall timeout.
+	 * Posts a new message if the previous one has been processed.
+	 *
+	 * @param now the current uptime in milliseconds
+	 */
+
+	private void checkMainThread(long now) {
+		if(config.stallTimeout <= 0 || Looper.myLooper() == Looper.getMainLooper()){
+			return;
+		}
+
+		final long postedTime = pingPostedTime;
+		if(postedTime == 0){
+			pingPostedTime = now;
+			mainHandler.post(ping);
+		}
+		else if(now - postedTime > config.stallTimeout){
+			Thread mainThread = Looper.getMainLooper().getThread();
+			Throwable mainThreadStack = new Throwable("Stack trace of thread '" + mainThread.getName() + "'");
+			mainThreadStack.setStackTrace(mainThread.getStackTrace());
+			fail("The main thread of the application has not responded for " + (now - postedTime) + " ms", mainThreadStack);
+		}
+	}
+
+	/**
+	 * Fails if all activities have been finished for longer than the stall timeout. Requires the
+	 * activities to be tracked with lifecycle callbacks.
+	 *
+	 * @param now the current uptime in milliseconds
+	 */
+
+	private void checkActivityStack(long now) {
+		if(config.stallTimeout <= 0 || !activityUtils.isTrackingLifecycle()){
+			return;
+		}
+
+		final ActivityRegistry activityRegistry = activityUtils.getActivityRegistry();
+		if(activityRegistry.getChangeCount() == 0 || !activityRegistry.isEmpty()){
+			emptySince = 0;
+			return;
+		}
+		if(emptySince == 0){
+			emptySince = now;
+		}
+		else if(now - emptySince > config.stallTimeout){
+			fail("All activities of the application have been finished for " + (now - emptySince) + " ms", null);
+		}
+	}
+
+	/**
+	 * Throws an {@code AssertionFailedError}.
+	 *
+	 * @param message the message of the error
+	 * @param cause the cause of the error or {@code null}
+	 */
+
+	private void fail(String message, Throwable cause) {
+		AssertionFailedError error = new AssertionFailedError(message);
+		if(cause != null){
+			error.initCause(cause);
+		}
+		throw error;
+	}
+
+	/**
+	 * Logs and records uncaught exceptions, and passes those of the main thread on to the previous handler.
+	 */
+
+	private final class UncaughtExceptionHandler implements Thread.UncaughtExceptionHandler {
+
+		public void uncaughtException(Thread thread, Throwable throwable) {
+			Log.e(LOG_TAG, "Uncaught exception in thread '" + thread.getName() + "'", throwable);
+
+			if(uncaughtThrowable == null){
+				uncaughtThreadName = thread.getName();
+				uncaughtThrowable = throwable;
+			}
+
+			final Thread.UncaughtExceptionHandler handler = previousHandler;
+			if(handler != null && thread == Looper.getMainLooper().getThread()){
+				handler.uncaughtException(thread, throwable);
+			}
+		}
+
+		/**
+		 * Returns the handler that was the default uncaught exception handler when watching started.
+		 *
+		 * @return the previous handler or {@code null}
+		 */
+
+		public Thread.UncaughtExceptionHandler getPreviousHandler() {
+			return previousHandler;
+		}
+	}
+}
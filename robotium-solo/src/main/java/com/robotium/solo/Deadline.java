@@ -0,0 +1,112 @@
+package com.robotium.solo;
+
+import android.os.SystemClock;
+
+
+/**
+ * A time budget shared by nested calls on the same thread. A composite operation starts a
+ * deadline, and the wait loops it calls end at the deadline at the latest instead of starting
+ * a new timeout of their own. All deadlines are also limited by the budget of the test, if one is set.
+ */
+
+final class Deadline {
+
+	private static final ThreadLocal<Deadline> currentDeadline = new ThreadLocal<Deadline>();
+	private static volatile long testEndTime = 0;
+	private final long endTime;
+	private int depth = 1;
+
+
+	private Deadline(long endTime) {
+		this.endTime = endTime;
+	}
+
+	/**
+	 * Starts a deadline on the current thread. If a deadline is already started, it is shared
+	 * and the given timeout is ignored.
+	 *
+	 * @param timeout the amount of time in milliseconds of the budget
+	 * @return the deadline, which must be finished with {@link #finish()}
+	 */
+
+	public static Deadline start(long timeout) {
+		Deadline deadline = currentDeadline.get();
+
+		if(deadline != null){
+			deadline.depth++;
+			return deadline;
+		}
+		deadline = new Deadline(limitToTest(SystemClock.uptimeMillis() + timeout));
+		currentDeadline.set(deadline);
+		return deadline;
+	}
+
+	/**
+	 * Finishes this deadline. The deadline ends when the call that started it finishes it.
+	 */
+
+	public void finish() {
+		depth--;
+		if(depth <= 0 && currentDeadline.get() == this){
+			currentDeadline.remove();
+		}
+	}
+
+	/**
+	 * Returns the end time of a wait loop with the given timeout, limited by the deadline of the
+	 * current thread and the budget of the test.
+	 *
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return the uptime in milliseconds when the wait loop should end
+	 */
+
+	public static long getEndTime(long timeout) {
+		long endTime = SystemClock.uptimeMillis() + timeout;
+		Deadline deadline = currentDeadline.get();
+
+		if(deadline != null && deadline.endTime < endTime){
+			endTime = deadline.endTime;
+		}
+		return limitToTest(endTime);
+	}
+
+	/**
+	 * Returns true if the deadline of the current thread or the budget of the test has passed.
+	 *
+	 * @return true if the deadline of the current thread or the budget of the test has passed
+	 */
+
+	public static boolean isExpired() {
+		final long now = SystemClock.uptimeMillis();
+		Deadline deadline = currentDeadline.get();
+
+		return (deadline != null && now > deadline.endTime) || (testEndTime != 0 && now > testEndTime);
+	}
+
+	/**
+	 * Starts the budget of the test. All deadlines and wait loops end when it has been used up.
+	 *
+	 * @param timeout the amount of time in milliseconds of the budget
+	 */
+
+	public static void startTestBudget(long timeout) {
+		testEndTime = SystemClock.uptimeMillis() + timeout;
+	}
+
+	/**
+	 * Stops the budget of the test.
+	 */
+
+	public static void stopTestBudget() {
+		testEndTime = 0;
+	}
+
+	private static long limitToTest(long endTime) {
+		final long testEnd = testEndTime;
+
+		if(testEnd != 0 && testEnd < endTime){
+			return testEnd;
+		}
+		return endTime;
+	}
+}
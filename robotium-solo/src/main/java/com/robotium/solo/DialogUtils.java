@@ -52,14 +52,15 @@ class DialogUtils {
 
 	public boolean waitForDialogToClose(long timeout) {
 		waitForDialogToOpen(TIMEOUT_DIALOG_TO_CLOSE, false);
-		final long endTime = SystemClock.uptimeMillis() + timeout;
+		final long endTime = Deadline.getEndTime(timeout);
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
 		while (SystemClock.uptimeMillis() < endTime) {
 
 			if(!isDialogOpen()){
 				return true;
 			}
-			sleeper.sleep(MINISLEEP);
+			backoff.sleep(MINISLEEP);
 		}
 		return false;
 	}
@@ -74,7 +75,7 @@ class DialogUtils {
 	 */
 
 	public boolean waitForDialogToOpen(long timeout, boolean sleepFirst) {
-		final long endTime = SystemClock.uptimeMillis() + timeout;
+		final long endTime = Deadline.getEndTime(timeout);
 		boolean dialogIsOpen = isDialogOpen();
 
 		if(sleepFirst)
@@ -83,13 +84,14 @@ class DialogUtils {
 		if(dialogIsOpen){
 			return true;
 		}
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
 		while (SystemClock.uptimeMillis() < endTime) {
 
 			if(isDialogOpen()){
 				return true;
 			}
-			sleeper.sleepMini();
+			backoff.sleepMini();
 		}
 		return false;
 	}
@@ -0,0 +1,36 @@
+package com.robotium.solo;
+
+/**
+ * A {@link SleepPolicy} that starts with a short sleep and multiplies it by a factor for every
+ * attempt, up to the pause length of the wait loop.<br/>
+ * Example of usage:
+ * <pre>
+ *	Config config = new Config();
+ *	config.sleepPolicy = new ExponentialSleepPolicy(10, 2f);
+ *	Solo solo = new Solo(getInstrumentation(), config);
+ * </pre>
+ */
+public class ExponentialSleepPolicy implements SleepPolicy {
+
+	private final int initialDuration;
+	private final float factor;
+
+	/**
+	 * Constructs this object.
+	 * @param initialDuration the amount of time in milliseconds to sleep the first time
+	 * @param factor the factor to multiply the sleep by for every attempt
+	 */
+	public ExponentialSleepPolicy(int initialDuration, float factor) {
+		this.initialDuration = Math.max(1, initialDuration);
+		this.factor = Math.max(1f, factor);
+	}
+
+	@Override
+	public int getSleepDuration(int attempt, int maxDuration) {
+		double duration = initialDuration * Math.pow(factor, attempt);
+		if(duration >= maxDuration){
+			return maxDuration;
+		}
+		return (int) duration;
+	}
+}
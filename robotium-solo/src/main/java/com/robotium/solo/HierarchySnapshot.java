@@ -0,0 +1,475 @@
+package com.robotium.solo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+
+/**
+ * An immutable copy of the shown view hierarchy, captured in one pass on the main thread.
+ * The properties of the views are kept in one primitive array per property, indexed by the
+ * position of the view in a depth first traversal where a parent comes before its children.
+ * Queries run on any thread against data that is consistent with one frame, and the live
+ * views are only used to act on a result.
+ */
+
+final class HierarchySnapshot {
+
+	static final int FLAG_SHOWN = 1;
+	static final int FLAG_SUFFICIENTLY_VISIBLE = 2;
+	static final int FLAG_TEXT_VIEW = 4;
+	static final int FLAG_TOUCHABLE = 8;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final int size;
+	private final View[] views;
+	private final int[] parents;
+	private final int[] classIndexes;
+	private final Class<?>[] classes;
+	private final int[] ids;
+	private final int[] bounds;
+	private final int[] flags;
+	private final int[] layers;
+	private final long[] drawingTimes;
+	private final String[] texts;
+	private final String[] hints;
+	private final String[] errors;
+	private ViewBoundsIndex boundsIndex;
+
+
+	private HierarchySnapshot(Builder builder) {
+		size = builder.size;
+		views = builder.views;
+		parents = builder.parents;
+		classIndexes = builder.classIndexes;
+		classes = builder.classes.toArray(new Class<?>[builder.classes.size()]);
+		ids = builder.ids;
+		bounds = builder.bounds;
+		flags = builder.flags;
+		layers = builder.layers;
+		drawingTimes = builder.drawingTimes;
+		texts = builder.texts;
+		hints = builder.hints;
+		errors = builder.errors;
+	}
+
+	/**
+	 * Captures the hierarchies of the given root views. Must be called on the main thread.
+	 * The last root view is taken to be the DecorView, which is drawn below the other windows.
+	 *
+	 * @param rootViews the root views of the shown windows, in the order they should be captured
+	 * @param viewFetcher the {@code ViewFetcher} instance, used for the display height
+	 * @return the captured snapshot
+	 */
+
+	static HierarchySnapshot capture(View[] rootViews, ViewFetcher viewFetcher) {
+		final Builder builder = new Builder();
+		final int displayHeight = viewFetcher.getDisplayHeight();
+
+		if(rootViews != null){
+			for(int i = 0; i < rootViews.length; i++){
+				if(rootViews[i] != null){
+					final int layer = (i == rootViews.length - 1) ? 0 : i + 1;
+					builder.add(rootViews[i], -1, layer, 0, displayHeight);
+				}
+			}
+		}
+		return new HierarchySnapshot(builder);
+	}
+
+	/**
+	 * Returns the number of views in the snapshot.
+	 *
+	 * @return the number of views
+	 */
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the live view at an index. Only to be used to act on a view that a query has found.
+	 *
+	 * @param index the index of the view
+	 * @return the live view
+	 */
+
+	public View getView(int index) {
+		return views[index];
+	}
+
+	/**
+	 * Returns the index of the parent of a view.
+	 *
+	 * @param index the index of the view
+	 * @return the index of the parent or {@code -1} for a root view
+	 */
+
+	public int getParent(int index) {
+		return parents[index];
+	}
+
+	/**
+	 * Returns the class of a view.
+	 *
+	 * @param index the index of the view
+	 * @return the class of the view
+	 */
+
+	public Class<?> getViewClass(int index) {
+		return classes[classIndexes[index]];
+	}
+
+	/**
+	 * Returns the id of a view.
+	 *
+	 * @param index the index of the view
+	 * @return the id of the view
+	 */
+
+	public int getId(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * Returns the left edge of a view on the screen. The bounds of a view are clipped to the bounds
+	 * of its parent, so a view scrolled out of its parent has empty bounds.
+	 *
+	 * @param index the index of the view
+	 * @return the left edge in pixels
+	 */
+
+	public int getLeft(int index) {
+		return bounds[index * 4];
+	}
+
+	/**
+	 * Returns the top edge of a view on the screen.
+	 *
+	 * @param index the index of the view
+	 * @return the top edge in pixels
+	 */
+
+	public int getTop(int index) {
+		return bounds[index * 4 + 1];
+	}
+
+	/**
+	 * Returns the right edge of a view on the screen.
+	 *
+	 * @param index the index of the view
+	 * @return the right edge in pixels
+	 */
+
+	public int getRight(int index) {
+		return bounds[index * 4 + 2];
+	}
+
+	/**
+	 * Returns the bottom edge of a view on the screen.
+	 *
+	 * @param index the index of the view
+	 * @return the bottom edge in pixels
+	 */
+
+	public int getBottom(int index) {
+		return bounds[index * 4 + 3];
+	}
+
+	/**
+	 * Returns true if a view and all its ancestors were visible.
+	 *
+	 * @param index the index of the view
+	 * @return true if the view was shown
+	 */
+
+	public boolean isShown(int index) {
+		return (flags[index] & FLAG_SHOWN) != 0;
+	}
+
+	/**
+	 * Returns true if a view was sufficiently shown, as decided by {@link ViewFetcher#isViewSufficientlyShown(View)}.
+	 *
+	 * @param index the index of the view
+	 * @return true if the view was sufficiently shown
+	 */
+
+	public boolean isSufficientlyVisible(int index) {
+		return (flags[index] & FLAG_SUFFICIENTLY_VISIBLE) != 0;
+	}
+
+	/**
+	 * Returns the layer of the window of a view. Views in a higher layer are drawn above
+	 * the views in a lower layer.
+	 *
+	 * @param index the index of the view
+	 * @return the layer of the view
+	 */
+
+	public int getLayer(int index) {
+		return layers[index];
+	}
+
+	/**
+	 * Returns true if a view can receive touches, as a clickable, long clickable or focusable view.
+	 *
+	 * @param index the index of the view
+	 * @return true if the view can receive touches
+	 */
+
+	public boolean isTouchable(int index) {
+		return (flags[index] & FLAG_TOUCHABLE) != 0;
+	}
+
+	/**
+	 * Returns the drawing time of a view.
+	 *
+	 * @param index the index of the view
+	 * @return the drawing time of the view
+	 */
+
+	public long getDrawingTime(int index) {
+		return drawingTimes[index];
+	}
+
+	/**
+	 * Returns the text of a view.
+	 *
+	 * @param index the index of the view
+	 * @return the text of the view or {@code null} if it is not a {@code TextView}
+	 */
+
+	public String getText(int index) {
+		return texts[index];
+	}
+
+	/**
+	 * Returns the index of a live view.
+	 *
+	 * @param view the view to look for
+	 * @return the index of the view or {@code -1} if it is not in the snapshot
+	 */
+
+	public int indexOf(View view) {
+		for(int i = 0; i < size; i++){
+			if(views[i] == view){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the spatial index of the view bounds, building it the first time.
+	 *
+	 * @return the spatial index of the view bounds
+	 */
+
+	public synchronized ViewBoundsIndex getBoundsIndex() {
+		if(boundsIndex == null){
+			boundsIndex = new ViewBoundsIndex(this);
+		}
+		return boundsIndex;
+	}
+
+	/**
+	 * Returns the sufficiently visible text views of a class with a text, error or hint that matches a regex.
+	 * Matches in the same way as {@link RobotiumUtils#getNumberOfMatches(String, TextView, java.util.Set)}.
+	 *
+	 * @param viewClass the class of the views, subclasses included
+	 * @param regex the text to match. The parameter will be interpreted as a regular expression
+	 * @param onlyShown {@code true} if only views that were shown should be returned
+	 * @return the live views that matched, in traversal order
+	 */
+
+	public <T extends TextView> ArrayList<T> getMatchingTextViews(Class<T> viewClass, String regex, boolean onlyShown) {
+		final boolean[] assignable = getAssignableClasses(viewClass);
+		final int requiredFlags = FLAG_TEXT_VIEW | FLAG_SUFFICIENTLY_VISIBLE | (onlyShown ? FLAG_SHOWN : 0);
+		final ArrayList<T> matchingViews = new ArrayList<T>();
+
+		for(int i = 0; i < size; i++){
+			if((flags[i] & requiredFlags) != requiredFlags || !assignable[classIndexes[i]]){
+				continue;
+			}
+			if(isTextMatching(i, regex)){
+				matchingViews.add(viewClass.cast(views[i]));
+			}
+		}
+		return matchingViews;
+	}
+
+	/**
+	 * Returns true if the text, error or hint of a text view matches a regex.
+	 *
+	 * @param index the index of the view
+	 * @param regex the regex to match
+	 * @return true if the view matches
+	 */
+
+	private boolean isTextMatching(int index, String regex) {
+		final String text = texts[index];
+
+		if(RobotiumUtils.isStringMatching(regex, text)){
+			return true;
+		}
+		if(errors[index] != null && RobotiumUtils.isStringMatching(regex, errors[index])){
+			return true;
+		}
+		return text.length() == 0 && hints[index] != null && RobotiumUtils.isStringMatching(regex, hints[index]);
+	}
+
+	/**
+	 * Returns which of the captured classes are the given class or a subclass of it.
+	 *
+	 * @param viewClass the class to check
+	 * @return one entry per captured class
+	 */
+
+	private boolean[] getAssignableClasses(Class<?> viewClass) {
+		final boolean[] assignable = new boolean[classes.length];
+
+		for(int i = 0; i < classes.length; i++){
+			assignable[i] = viewClass.isAssignableFrom(classes[i]);
+		}
+		return assignable;
+	}
+
+	/**
+	 * Collects the properties of the views while the hierarchy is traversed.
+	 */
+
+	private static final class Builder {
+
+		private final HashMap<Class<?>, Integer> classIndexByClass = new HashMap<Class<?>, Integer>();
+		private final ArrayList<Class<?>> classes = new ArrayList<Class<?>>();
+		private final int[] location = new int[2];
+		private int size = 0;
+		private View[] views = new View[INITIAL_CAPACITY];
+		private int[] parents = new int[INITIAL_CAPACITY];
+		private int[] classIndexes = new int[INITIAL_CAPACITY];
+		private int[] ids = new int[INITIAL_CAPACITY];
+		private int[] bounds = new int[INITIAL_CAPACITY * 4];
+		private int[] flags = new int[INITIAL_CAPACITY];
+		private int[] layers = new int[INITIAL_CAPACITY];
+		private long[] drawingTimes = new long[INITIAL_CAPACITY];
+		private String[] texts = new String[INITIAL_CAPACITY];
+		private String[] hints = new String[INITIAL_CAPACITY];
+		private String[] errors = new String[INITIAL_CAPACITY];
+
+		/**
+		 * Adds a view and its children. A view is sufficiently visible if its vertical center is
+		 * inside the nearest scroll or list view, itself included, or inside the display if there is none.
+		 */
+
+		void add(View view, int parent, int layer, int clipTop, int clipBottom) {
+			ensureCapacity();
+			final int index = size++;
+
+			views[index] = view;
+			parents[index] = parent;
+			classIndexes[index] = getClassIndex(view.getClass());
+			ids[index] = view.getId();
+			layers[index] = layer;
+
+			view.getLocationOnScreen(location);
+			int left = location[0];
+			int top = location[1];
+			int right = location[0] + view.getWidth();
+			int bottom = location[1] + view.getHeight();
+
+			if(parent >= 0){
+				left = Math.max(left, bounds[parent * 4]);
+				top = Math.max(top, bounds[parent * 4 + 1]);
+				right = Math.max(left, Math.min(right, bounds[parent * 4 + 2]));
+				bottom = Math.max(top, Math.min(bottom, bounds[parent * 4 + 3]));
+			}
+			bounds[index * 4] = left;
+			bounds[index * 4 + 1] = top;
+			bounds[index * 4 + 2] = right;
+			bounds[index * 4 + 3] = bottom;
+			drawingTimes[index] = view.getDrawingTime();
+
+			int viewFlags = 0;
+			if(view.isShown()){
+				viewFlags |= FLAG_SHOWN;
+			}
+			if(view.isClickable() || view.isLongClickable() || view.isFocusable()){
+				viewFlags |= FLAG_TOUCHABLE;
+			}
+			if(ViewTypes.is(view, ViewTypes.SCROLL_OR_LIST_VIEW)){
+				clipTop = location[1];
+				clipBottom = location[1] + view.getHeight();
+			}
+			final float center = location[1] + (view.getHeight()/2.0f);
+			if(center <= clipBottom && center >= clipTop){
+				viewFlags |= FLAG_SUFFICIENTLY_VISIBLE;
+			}
+			if(view instanceof TextView){
+				final TextView textView = (TextView) view;
+				viewFlags |= FLAG_TEXT_VIEW;
+				texts[index] = textView.getText().toString();
+				hints[index] = (textView.getHint() != null) ? textView.getHint().toString() : null;
+				errors[index] = (textView.getError() != null) ? textView.getError().toString() : null;
+			}
+			flags[index] = viewFlags;
+
+			if(view instanceof ViewGroup){
+				final ViewGroup viewGroup = (ViewGroup) view;
+
+				for(int i = 0; i < viewGroup.getChildCount(); i++){
+					final View child = viewGroup.getChildAt(i);
+					if(child != null){
+						add(child, index, layer, clipTop, clipBottom);
+					}
+				}
+			}
+		}
+
+		private int getClassIndex(Class<?> viewClass) {
+			Integer classIndex = classIndexByClass.get(viewClass);
+
+			if(classIndex == null){
+				classIndex = classes.size();
+				classes.add(viewClass);
+				classIndexByClass.put(viewClass, classIndex);
+			}
+			return classIndex;
+		}
+
+		private void ensureCapacity() {
+			if(size < views.length){
+				return;
+			}
+			final int capacity = views.length * 2;
+			final View[] newViews = new View[capacity];
+			System.arraycopy(views, 0, newViews, 0, size);
+			views = newViews;
+			parents = copyOf(parents, capacity);
+			classIndexes = copyOf(classIndexes, capacity);
+			ids = copyOf(ids, capacity);
+			bounds = copyOf(bounds, capacity * 4);
+			flags = copyOf(flags, capacity);
+			layers = copyOf(layers, capacity);
+			final long[] newDrawingTimes = new long[capacity];
+			System.arraycopy(drawingTimes, 0, newDrawingTimes, 0, size);
+			drawingTimes = newDrawingTimes;
+			texts = copyOf(texts, capacity);
+			hints = copyOf(hints, capacity);
+			errors = copyOf(errors, capacity);
+		}
+
+		private static int[] copyOf(int[] array, int capacity) {
+			final int[] newArray = new int[capacity];
+			System.arraycopy(array, 0, newArray, 0, Math.min(array.length, capacity));
+			return newArray;
+		}
+
+		private static String[] copyOf(String[] array, int capacity) {
+			final String[] newArray = new String[capacity];
+			System.arraycopy(array, 0, newArray, 0, Math.min(array.length, capacity));
+			return newArray;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.robotium.solo;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.view.View;
+
+
+/**
+ * Waits for the main looper of the application under test to be idle and for the shown
+ * views to be laid out and drawn. Used instead of fixed pauses before actions.
+ */
+
+class IdleSynchronizer {
+
+	private final ViewFetcher viewFetcher;
+	private final Handler mainHandler;
+
+
+	/**
+	 * Constructs this object.
+	 *
+	 * @param viewFetcher the {@code ViewFetcher} instance
+	 */
+
+	public IdleSynchronizer(ViewFetcher viewFetcher) {
+		this.viewFetcher = viewFetcher;
+		this.mainHandler = new Handler(Looper.getMainLooper());
+	}
+
+	/**
+	 * Waits for the main message queue to be idle with no pending layout or draw.
+	 * Returns immediately if called on the main thread.
+	 *
+	 * @param timeout the maximum amount of time in milliseconds to wait
+	 * @return {@code true} if the main looper became idle and {@code false} if the timeout was reached
+	 */
+
+	public boolean waitForIdle(long timeout) {
+		if(Looper.myLooper() == Looper.getMainLooper()){
+			return true;
+		}
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final long endTime = SystemClock.uptimeMillis() + timeout;
+		final IdleHandler idleHandler = new IdleHandler(latch, endTime);
+
+		mainHandler.post(new Runnable() {
+			public void run() {
+				Looper.myQueue().addIdleHandler(idleHandler);
+			}
+		});
+
+		try {
+			return latch.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		finally {
+			idleHandler.cancel();
+		}
+	}
+
+	/**
+	 * Returns true if a shown view tree has a pending layout or draw.
+	 * Called on the main thread.
+	 *
+	 * @return true if a shown view tree has a pending layout or draw
+	 */
+
+	private boolean isViewTreeUnsettled() {
+		View[] decorViews = viewFetcher.getWindowDecorViews();
+
+		if(decorViews == null){
+			return false;
+		}
+		for(View decorView : decorViews){
+			if(decorView != null && decorView.isShown() && (decorView.isLayoutRequested() || decorView.isDirty())){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Counts down the latch the first time the main message queue is idle while the view trees are settled.
+	 * Stays registered while a layout or draw is pending, so that it is called again when the queue is next idle.
+	 */
+
+	private class IdleHandler implements MessageQueue.IdleHandler {
+
+		private final CountDownLatch latch;
+		private final long endTime;
+		private volatile boolean cancelled = false;
+
+		IdleHandler(CountDownLatch latch, long endTime) {
+			this.latch = latch;
+			this.endTime = endTime;
+		}
+
+		void cancel() {
+			cancelled = true;
+		}
+
+		public boolean queueIdle() {
+			if(cancelled || SystemClock.uptimeMillis() > endTime){
+				return false;
+			}
+			if(isViewTreeUnsettled()){
+				return true;
+			}
+			latch.countDown();
+			return false;
+		}
+	}
+}
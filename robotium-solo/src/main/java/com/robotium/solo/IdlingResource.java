@@ -0,0 +1,38 @@
+package com.robotium.solo;
+
+/**
+ * Represents a resource of the application under test that can be busy, e.g. a network call or a database load.<br/>
+ * Implementations may be registered with {@link Solo#registerIdlingResource(IdlingResource)}. The wait methods then wait
+ * for all registered resources to be idle before they check the views.
+ */
+public interface IdlingResource {
+
+	/**
+	 * Returns the name of this resource, used for logging.
+	 * @return the name of this resource
+	 */
+	public String getName();
+
+	/**
+	 * Returns whether this resource is idle. Should return quickly and may be called from any thread.
+	 * @return {@code true} if this resource is idle and {@code false} if it is busy
+	 */
+	public boolean isIdleNow();
+
+	/**
+	 * Registers the callback to notify when this resource goes from busy to idle.
+	 * @param callback the callback to notify
+	 */
+	public void registerIdleTransitionCallback(ResourceCallback callback);
+
+	/**
+	 * Notified by an {@link IdlingResource} when it goes from busy to idle.
+	 */
+	public interface ResourceCallback {
+
+		/**
+		 * Should be called when the resource goes from busy to idle.
+		 */
+		public void onTransitionToIdle();
+	}
+}
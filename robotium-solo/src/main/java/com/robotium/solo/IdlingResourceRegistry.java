@@ -0,0 +1,148 @@
+package com.robotium.solo;
+
+import java.util.ArrayList;
+import android.os.SystemClock;
+import android.util.Log;
+
+
+/**
+ * Keeps the registered {@code IdlingResource}s and waits for all of them to be idle.
+ * Waiting wakes up when a resource reports that it has gone idle, and checks again at
+ * least every {@code POLL_INTERVAL} milliseconds in case a resource does not report it.
+ */
+
+class IdlingResourceRegistry {
+
+	private static final long POLL_INTERVAL = 50;
+	private final String LOG_TAG = "Robotium";
+	private final ArrayList<IdlingResource> idlingResources;
+	private final Object transitionLock = new Object();
+	private final IdlingResource.ResourceCallback callback;
+	private long transitions = 0;
+
+
+	/**
+	 * Constructs this object.
+	 */
+
+	public IdlingResourceRegistry() {
+		idlingResources = new ArrayList<IdlingResource>();
+		callback = new IdlingResource.ResourceCallback() {
+			public void onTransitionToIdle() {
+				synchronized (transitionLock) {
+					transitions++;
+					transitionLock.notifyAll();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Registers an {@code IdlingResource}. A resource that is already registered is ignored.
+	 *
+	 * @param idlingResource the resource to register
+	 * @return {@code true} if the resource was registered
+	 */
+
+	public boolean register(IdlingResource idlingResource) {
+		synchronized (idlingResources) {
+			if(idlingResource == null || idlingResources.contains(idlingResource)){
+				return false;
+			}
+			idlingResources.add(idlingResource);
+		}
+		idlingResource.registerIdleTransitionCallback(callback);
+		return true;
+	}
+
+	/**
+	 * Unregisters an {@code IdlingResource}.
+	 *
+	 * @param idlingResource the resource to unregister
+	 * @return {@code true} if the resource was registered
+	 */
+
+	public boolean unregister(IdlingResource idlingResource) {
+		boolean removed;
+
+		synchronized (idlingResources) {
+			removed = idlingResources.remove(idlingResource);
+		}
+		callback.onTransitionToIdle();
+		return removed;
+	}
+
+	/**
+	 * Returns true if all registered resources are idle.
+	 *
+	 * @return true if all registered resources are idle or if there are none
+	 */
+
+	public boolean isIdle() {
+		return getBusyResource() == null;
+	}
+
+	/**
+	 * Waits for all registered resources to be idle.
+	 *
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return {@code true} if all resources are idle and {@code false} if one is still busy after the timeout
+	 */
+
+	public boolean waitForIdle(long timeout) {
+		final long endTime = SystemClock.uptimeMillis() + timeout;
+
+		while(true){
+			long transitionsBefore;
+			synchronized (transitionLock) {
+				transitionsBefore = transitions;
+			}
+
+			IdlingResource busyResource = getBusyResource();
+			if(busyResource == null){
+				return true;
+			}
+
+			long timeLeft = endTime - SystemClock.uptimeMillis();
+			if(timeLeft <= 0){
+				Log.d(LOG_TAG, "IdlingResource " + busyResource.getName() + " is still busy");
+				return false;
+			}
+
+			synchronized (transitionLock) {
+				if(transitions == transitionsBefore){
+					try {
+						transitionLock.wait(Math.min(timeLeft, POLL_INTERVAL));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the first registered resource that is busy.
+	 *
+	 * @return the first busy resource or {@code null} if all resources are idle
+	 */
+
+	private IdlingResource getBusyResource() {
+		final ArrayList<IdlingResource> resources;
+
+		synchronized (idlingResources) {
+			if(idlingResources.isEmpty()){
+				return null;
+			}
+			resources = new ArrayList<IdlingResource>(idlingResources);
+		}
+
+		for(IdlingResource idlingResource : resources){
+			if(!idlingResource.isIdleNow()){
+				return idlingResource;
+			}
+		}
+		return null;
+	}
+}
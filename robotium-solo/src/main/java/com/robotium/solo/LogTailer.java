@@ -0,0 +1,180 @@
+package com.robotium.solo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import android.os.SystemClock;
+
+
+/**
+ * Streams the log from a single logcat process into a bounded ring buffer.
+ * Waiting for a log message only checks the lines that have arrived since the last check.
+ * Requires read logs permission (android.permission.READ_LOGS) in AndroidManifest.xml of the application under test.
+ */
+
+class LogTailer {
+
+	private static final int BUFFER_SIZE = 10000;
+	private final String[] lines;
+	private long lineCount = 0;
+	private long mark = 0;
+	private Process process;
+	private boolean running = false;
+
+
+	/**
+	 * Constructs this object.
+	 */
+
+	public LogTailer() {
+		lines = new String[BUFFER_SIZE];
+	}
+
+	/**
+	 * Starts the logcat process if it is not already running.
+	 *
+	 * @return true if the logcat process is running
+	 */
+
+	public synchronized boolean start() {
+		if(running){
+			return true;
+		}
+
+		try {
+			process = Runtime.getRuntime().exec("logcat");
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		running = true;
+
+		final Process logcatProcess = process;
+		Thread readerThread = new Thread("logTailerThread") {
+			@Override
+			public void run() {
+				readLines(logcatProcess);
+			}
+		};
+		readerThread.setDaemon(true);
+		readerThread.start();
+		return true;
+	}
+
+	/**
+	 * Returns true if the logcat process is running.
+	 *
+	 * @return true if the logcat process is running
+	 */
+
+	public synchronized boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Stops the logcat process.
+	 */
+
+	public synchronized void stop() {
+		if(process != null){
+			process.destroy();
+			process = null;
+		}
+		running = false;
+		notifyAll();
+	}
+
+	/**
+	 * Ignores all lines that have been read so far. Used when the log is cleared.
+	 */
+
+	public synchronized void mark() {
+		mark = lineCount;
+	}
+
+	/**
+	 * Waits for a log message to appear in a line read since the last mark.
+	 *
+	 * @param logMessage the log message to wait for
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return true if log message appears and false if it does not appear before the timeout
+	 */
+
+	public synchronized boolean waitForMessage(String logMessage, int timeout) {
+		final long endTime = SystemClock.uptimeMillis() + timeout;
+		long position = mark;
+
+		while (true) {
+			position = Math.max(Math.max(position, mark), lineCount - BUFFER_SIZE);
+
+			for(; position < lineCount; position++){
+				if(lines[(int) (position % BUFFER_SIZE)].contains(logMessage)){
+					return true;
+				}
+			}
+
+			final long timeLeft = endTime - SystemClock.uptimeMillis();
+			if(timeLeft <= 0 || !running){
+				return false;
+			}
+
+			try {
+				wait(timeLeft);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Reads lines from the logcat process until it ends.
+	 *
+	 * @param logcatProcess the logcat process to read from
+	 */
+
+	private void readLines(Process logcatProcess) {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(logcatProcess.getInputStream()));
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				addLine(line);
+			}
+		} catch (IOException ignored) {
+		} finally {
+			try {
+				if(reader != null){
+					reader.close();
+				}
+			} catch (IOException ignored) {}
+			onProcessEnded(logcatProcess);
+		}
+	}
+
+	/**
+	 * Adds a line to the ring buffer and wakes up the waiting threads.
+	 *
+	 * @param line the line to add
+	 */
+
+	private synchronized void addLine(String line) {
+		lines[(int) (lineCount % BUFFER_SIZE)] = line;
+		lineCount++;
+		notifyAll();
+	}
+
+	/**
+	 * Marks the tailer as not running if the ended process is the current one.
+	 *
+	 * @param logcatProcess the process that has ended
+	 */
+
+	private synchronized void onProcessEnded(Process logcatProcess) {
+		if(process == logcatProcess){
+			process = null;
+			running = false;
+			notifyAll();
+		}
+	}
+}
@@ -1,10 +1,10 @@
 package com.robotium.solo;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -21,6 +21,16 @@ import android.widget.TextView;
 
 public class RobotiumUtils {
 
+	private static final int PATTERN_CACHE_SIZE = 64;
+	private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+	private static final Map<String, Pattern> patternCache = new LinkedHashMap<String, Pattern>(PATTERN_CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+			return size() > PATTERN_CACHE_SIZE;
+		}
+	};
 
 	/**
 	 * Removes invisible Views.
@@ -89,7 +99,7 @@ public class RobotiumUtils {
 	 */
 
 	public static void sortViewsByLocationOnScreen(List<? extends View> views) {
-		Collections.sort(views, new ViewLocationComparator());
+		new ViewLocationComparator().sort(views);
 	}
 
 	/**
@@ -101,7 +111,7 @@ public class RobotiumUtils {
 	 */
 
 	public static void sortViewsByLocationOnScreen(List<? extends View> views, boolean yAxisFirst) {
-		Collections.sort(views, new ViewLocationComparator(yAxisFirst));
+		new ViewLocationComparator(yAxisFirst).sort(views);
 	}
 
 	/**
@@ -118,32 +128,105 @@ public class RobotiumUtils {
 			return uniqueTextViews.size();
 		}
 		
-		Pattern pattern = null;
-		try{
-			pattern = Pattern.compile(regex);
-		}catch(PatternSyntaxException e){
-			pattern = Pattern.compile(regex, Pattern.LITERAL);
-		}
-		
-		Matcher matcher = pattern.matcher(view.getText().toString());
-		
-		if (matcher.find()){
+		if (isTextMatching(regex, view)){
 			uniqueTextViews.add(view);
 		}
-		
-		if (view.getError() != null){
-			matcher = pattern.matcher(view.getError().toString());
-			if (matcher.find()){
-				uniqueTextViews.add(view);
+		return uniqueTextViews.size();		
+	}
+
+	/**
+	 * Checks if the text of a view, or its error or hint, matches a regex.
+	 * 
+	 * @param regex the regex to match
+	 * @param view the view to check
+	 * @return true if the view matches
+	 */
+
+	static boolean isTextMatching(String regex, TextView view){
+		final Pattern pattern = getPattern(regex);
+		final String text = view.getText().toString();
+
+		if (isMatching(pattern, regex, text)){
+			return true;
+		}
+		else if (view.getError() != null && isMatching(pattern, regex, view.getError().toString())){
+			return true;
+		}
+		else if (text.equals("") && view.getHint() != null && isMatching(pattern, regex, view.getHint().toString())){
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a string contains a match of a regex.
+	 * 
+	 * @param regex the regex to match
+	 * @param text the string to check
+	 * @return true if the string contains a match
+	 */
+
+	static boolean isStringMatching(String regex, String text){
+		return isMatching(getPattern(regex), regex, text);
+	}
+
+	/**
+	 * Returns the compiled pattern of a regex. Compiled patterns are kept in a bounded cache.
+	 * 
+	 * @param regex the regex to compile
+	 * @return the compiled pattern or {@code null} if the regex should be matched as a literal string
+	 */
+
+	private static Pattern getPattern(String regex){
+		synchronized (patternCache) {
+			if(patternCache.containsKey(regex)){
+				return patternCache.get(regex);
 			}
-		}	
-		if (view.getText().toString().equals("") && view.getHint() != null){
-			matcher = pattern.matcher(view.getHint().toString());
-			if (matcher.find()){
-				uniqueTextViews.add(view);
+		}
+
+		Pattern pattern = null;
+		if(!isLiteral(regex)){
+			try{
+				pattern = Pattern.compile(regex);
+			}catch(PatternSyntaxException ignored){}
+		}
+
+		synchronized (patternCache) {
+			patternCache.put(regex, pattern);
+		}
+		return pattern;
+	}
+
+	/**
+	 * Returns true if the regex does not contain any regex metacharacters.
+	 * 
+	 * @param regex the regex to check
+	 * @return true if the regex can be matched as a literal string
+	 */
+
+	private static boolean isLiteral(String regex){
+		for(int i = 0; i < regex.length(); i++){
+			if(REGEX_METACHARACTERS.indexOf(regex.charAt(i)) != -1){
+				return false;
 			}
-		}	
-		return uniqueTextViews.size();		
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if a text contains a match of a pattern, or of the literal regex if there is no pattern.
+	 * 
+	 * @param pattern the compiled pattern or {@code null}
+	 * @param regex the regex that the pattern is compiled from
+	 * @param text the text to check
+	 * @return true if the text contains a match
+	 */
+
+	private static boolean isMatching(Pattern pattern, String regex, String text){
+		if(pattern == null){
+			return text.indexOf(regex) != -1;
+		}
+		return pattern.matcher(text).find();
 	}
 
 	/**
@@ -5,10 +5,15 @@
  * 
  */
 
+var robotiumRequestId = 0;
+var robotiumBatch = [];
+var robotiumBatchLength = 0;
+
 function allWebElements() {
-	for (var key in document.all){
+	var elements = document.all;
+	for (var i = 0; i < elements.length; i++){
 		try{
-			promptElement(document.all[key]);			
+			promptElement(elements[i]);			
 		}catch(ignored){}
 	}
 	finished();
@@ -248,15 +253,15 @@ function promptElement(element) {
 	var attributes = "";
 	var htmlAttributes = element.attributes;
 	for (var i = 0, htmlAttribute; htmlAttribute = htmlAttributes[i]; i++){
-		attributes += htmlAttribute.name + "::" + htmlAttribute.value;
+		attributes += htmlAttribute.name + "\u001c" + htmlAttribute.value;
 		if (i + 1 < htmlAttributes.length) {
-			attributes += "#$";
+			attributes += "\u001d";
 		}
 	}
 
 	var rect = element.getBoundingClientRect();
 	if(rect.width > 0 && rect.height > 0 && rect.left >= 0 && rect.top >= 0){
-		prompt(id + ';,' + text + ';,' + name + ";," + className + ";," + tagName + ";," + rect.left + ';,' + rect.top + ';,' + rect.width + ';,' + rect.height + ';,' + attributes);
+		addToBatch(id + "\u001f" + text + "\u001f" + name + "\u001f" + className + "\u001f" + tagName + "\u001f" + rect.left + "\u001f" + rect.top + "\u001f" + rect.width + "\u001f" + rect.height + "\u001f" + attributes);
 	}
 }
 
@@ -270,11 +275,28 @@ function promptText(element, range) {
 			var name = element.parentNode.getAttribute('name');
 			var className = element.parentNode.className;
 			var tagName = element.parentNode.tagName;
-			prompt(id + ';,' + text + ';,' + name + ";," + className + ";," + tagName + ";," + rect.left + ';,' + rect.top + ';,' + rect.width + ';,' + rect.height);
+			addToBatch(id + "\u001f" + text + "\u001f" + name + "\u001f" + className + "\u001f" + tagName + "\u001f" + rect.left + "\u001f" + rect.top + "\u001f" + rect.width + "\u001f" + rect.height);
 		}
 	}
 }
 
+function addToBatch(webElement) {
+	robotiumBatch.push(webElement);
+	robotiumBatchLength += webElement.length;
+	if(robotiumBatchLength > 65536){
+		flushBatch();
+	}
+}
+
+function flushBatch() {
+	if(robotiumBatch.length > 0){
+		prompt('robotium-batch:' + robotiumRequestId + "\u001e" + robotiumBatch.join("\u001e"));
+	}
+	robotiumBatch = [];
+	robotiumBatchLength = 0;
+}
+
 function finished(){
-	prompt('robotium-finished');
+	flushBatch();
+	prompt('robotium-finished:' + robotiumRequestId);
 }
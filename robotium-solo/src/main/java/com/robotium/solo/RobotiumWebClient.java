@@ -23,6 +23,7 @@ import android.webkit.WebView;
 
 class RobotiumWebClient extends WebChromeClient{
 	WebElementCreator webElementCreator;
+	private WebUtils webUtils;
 	private Instrumentation inst;
 	private WebChromeClient robotiumWebClient;
 	private WebChromeClient originalWebChromeClient = null;
@@ -32,11 +33,13 @@ class RobotiumWebClient extends WebChromeClient{
 	 * Constructs this object.
 	 *
 	 * @param instrumentation the {@code Instrumentation} instance
+	 * @param webUtils the {@code WebUtils} instance
 	 * @param webElementCreator the {@code WebElementCreator} instance
 	 */
 
-	public RobotiumWebClient(Instrumentation inst, WebElementCreator webElementCreator){
+	public RobotiumWebClient(Instrumentation inst, WebUtils webUtils, WebElementCreator webElementCreator){
 		this.inst = inst;
+		this.webUtils = webUtils;
 		this.webElementCreator = webElementCreator;
 		robotiumWebClient = this;
 	}
@@ -66,15 +69,24 @@ class RobotiumWebClient extends WebChromeClient{
 	 */
 
 	@Override
-	public boolean onJsPrompt(WebView view, String url, String message,	String defaultValue, JsPromptResult r) {
+	public boolean onJsPrompt(final WebView view, String url, String message,	String defaultValue, JsPromptResult r) {
 		
-		if(message != null && (message.contains(";,") || message.contains("robotium-finished"))){
+		if(message != null && (message.startsWith(WebElementCreator.BATCH_PREFIX) || message.startsWith(WebElementCreator.FINISHED_PREFIX)
+				|| message.startsWith(WebUtils.INSTALL_PREFIX))){
 	
-			if(message.equals("robotium-finished")){
-				webElementCreator.setFinished(true);
+			if(message.startsWith(WebElementCreator.FINISHED_PREFIX)){
+				webElementCreator.setFinished(message);
+			}
+			else if(message.startsWith(WebUtils.INSTALL_PREFIX)){
+				final int requestId = webElementCreator.getRequestId(message, WebUtils.INSTALL_PREFIX);
+				view.post(new Runnable() {
+					public void run() {
+						webUtils.installJavaScriptAndExecute(view, requestId);
+					}
+				});
 			}
 			else{
-				webElementCreator.createWebElementAndAddInList(message, view);
+				webElementCreator.createWebElementsAndAddInList(message, view);
 			}
 			r.confirm();
 			return true;
@@ -0,0 +1,201 @@
+package com.robotium.solo;
+
+import android.app.Activity;
+import android.view.View;
+import android.widget.TextView;
+
+
+/**
+ * A condition on what is shown on the screen. Used with {@link Solo#waitForAny(int, ScreenCondition...)}
+ * and {@link Solo#waitForAll(int, ScreenCondition...)}, which check all their conditions against
+ * one traversal of the view tree each time they check.
+ * <br><br>
+ * Example of usage:
+ * <pre>
+ *  int match = solo.waitForAny(ScreenCondition.text("Welcome"), ScreenCondition.view(R.id.error_dialog));
+ * </pre>
+ */
+
+public abstract class ScreenCondition {
+
+	private final String description;
+
+
+	/**
+	 * Constructs this object. Conditions are created with the static factory methods.
+	 *
+	 * @param description the description returned by {@code toString()}
+	 */
+
+	ScreenCondition(String description) {
+		this.description = description;
+	}
+
+	/**
+	 * Returns a condition that is satisfied when a shown {@code TextView} has a text, error or hint
+	 * that matches the given regex.
+	 *
+	 * @param regex the text to wait for. The parameter will be interpreted as a regular expression
+	 * @return the condition
+	 */
+
+	public static ScreenCondition text(final String regex) {
+		return new ScreenCondition("text(" + regex + ")") {
+			@Override
+			boolean isViewCondition() {
+				return true;
+			}
+
+			@Override
+			boolean matches(View view) {
+				return view instanceof TextView && view.isShown() && RobotiumUtils.isTextMatching(regex, (TextView) view);
+			}
+		};
+	}
+
+	/**
+	 * Returns a condition that is satisfied when a view of the given class, or a subclass of it, is shown.
+	 *
+	 * @param viewClass the {@code View} class to wait for
+	 * @return the condition
+	 */
+
+	public static ScreenCondition view(final Class<? extends View> viewClass) {
+		return new ScreenCondition("view(" + viewClass.getSimpleName() + ")") {
+			@Override
+			boolean isViewCondition() {
+				return true;
+			}
+
+			@Override
+			boolean matches(View view) {
+				return viewClass.isInstance(view) && view.isShown();
+			}
+		};
+	}
+
+	/**
+	 * Returns a condition that is satisfied when a view with the given id is shown.
+	 *
+	 * @param id the R.id of the {@code View} to wait for
+	 * @return the condition
+	 */
+
+	public static ScreenCondition view(final int id) {
+		return new ScreenCondition("view(" + id + ")") {
+			@Override
+			boolean isViewCondition() {
+				return true;
+			}
+
+			@Override
+			boolean matches(View view) {
+				return view != null && view.getId() == id && view.isShown();
+			}
+		};
+	}
+
+	/**
+	 * Returns a condition that is satisfied when the current {@code Activity} has the given name.
+	 *
+	 * @param name the name of the {@code Activity} to wait for e.g. {@code "MyActivity"}
+	 * @return the condition
+	 */
+
+	public static ScreenCondition activity(final String name) {
+		return new ScreenCondition("activity(" + name + ")") {
+			@Override
+			boolean isSatisfied(ActivityUtils activityUtils, WebUtils webUtils) {
+				Activity activity = activityUtils.getCurrentActivity(false, false);
+				return activity != null && activity.getClass().getSimpleName().equals(name);
+			}
+		};
+	}
+
+	/**
+	 * Returns a condition that is satisfied when the current {@code Activity} is of the given class.
+	 *
+	 * @param activityClass the class of the {@code Activity} to wait for
+	 * @return the condition
+	 */
+
+	public static ScreenCondition activity(final Class<? extends Activity> activityClass) {
+		return new ScreenCondition("activity(" + activityClass.getSimpleName() + ")") {
+			@Override
+			boolean isSatisfied(ActivityUtils activityUtils, WebUtils webUtils) {
+				Activity activity = activityUtils.getCurrentActivity(false, false);
+				return activity != null && activity.getClass().equals(activityClass);
+			}
+		};
+	}
+
+	/**
+	 * Returns a condition that is satisfied when a web element matching the given {@code By} is shown.
+	 *
+	 * @param by the By object. Examples are: {@code By.id("id")} and {@code By.name("name")}
+	 * @return the condition
+	 */
+
+	public static ScreenCondition webElement(final By by) {
+		return new ScreenCondition("webElement(" + by.getValue() + ")") {
+			@Override
+			boolean isSatisfied(ActivityUtils activityUtils, WebUtils webUtils) {
+				return !webUtils.getWebElements(by, true).isEmpty();
+			}
+		};
+	}
+
+	/**
+	 * Returns a condition that is satisfied when the given {@code Condition} is satisfied.
+	 *
+	 * @param condition the condition to wait for
+	 * @return the condition
+	 */
+
+	public static ScreenCondition condition(final Condition condition) {
+		return new ScreenCondition(String.valueOf(condition)) {
+			@Override
+			boolean isSatisfied(ActivityUtils activityUtils, WebUtils webUtils) {
+				return condition.isSatisfied();
+			}
+		};
+	}
+
+	/**
+	 * Returns true if the condition is checked against the views of the view tree with {@link #matches(View)}.
+	 *
+	 * @return true if the condition is checked against the views of the view tree
+	 */
+
+	boolean isViewCondition() {
+		return false;
+	}
+
+	/**
+	 * Returns true if the given view satisfies the condition. Only used if {@link #isViewCondition()} returns true.
+	 *
+	 * @param view the view to check
+	 * @return true if the view satisfies the condition
+	 */
+
+	boolean matches(View view) {
+		return false;
+	}
+
+	/**
+	 * Returns true if the condition is satisfied. Only used if {@link #isViewCondition()} returns false.
+	 *
+	 * @param activityUtils the {@code ActivityUtils} instance
+	 * @param webUtils the {@code WebUtils} instance
+	 * @return true if the condition is satisfied
+	 */
+
+	boolean isSatisfied(ActivityUtils activityUtils, WebUtils webUtils) {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
@@ -0,0 +1,279 @@
+package com.robotium.solo;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import com.robotium.solo.Solo.Config.ScreenshotFileType;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * Writes the frames of a screenshot recording to a single file.
+ * Frames are captured into a ring of reusable bitmaps, frames that are identical to the previous frame are skipped
+ * and the changed frames are encoded on a separate thread.
+ *
+ * The file starts with the magic "RREC" and a version int. Each frame is written as a
+ * timestamp long (milliseconds since the recording started), a length int and the encoded JPEG or PNG image.
+ * The recording ends with an index: the frame count int, followed by the offset long and timestamp long of each frame,
+ * the end timestamp long, the offset long of the index and the magic "RREC" again.
+ */
+
+class ScreenshotRecording {
+
+	private static final String LOG_TAG = "Robotium";
+	private static final int MAGIC = 0x52524543;
+	private static final int VERSION = 1;
+	private static final int RING_SIZE = 4;
+	private static final long TIMEOUT_CLOSE = TimeUnit.SECONDS.toMillis(10);
+	private final ArrayBlockingQueue<Bitmap> freeFrames;
+	private final ExecutorService encoder;
+	private final ArrayList<long[]> index;
+	private final ByteArrayOutputStream encodedFrame;
+	private final Bitmap.CompressFormat format;
+	private final int quality;
+	private final long startTime;
+	private DataOutputStream out;
+	private long offset = 0;
+	private int createdFrames = 0;
+	private int addedFrames = 0;
+	private long previousHash = 0;
+	private int[] row;
+
+
+	/**
+	 * Constructs this object and creates the recording file.
+	 *
+	 * @param file the file to write the recording to
+	 * @param fileType the file type to encode the frames as
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 * @param startTime the uptime in milliseconds when the recording started
+	 * @throws IOException if the file could not be created
+	 */
+
+	public ScreenshotRecording(File file, ScreenshotFileType fileType, int quality, long startTime) throws IOException {
+		this.format = (fileType == ScreenshotFileType.JPEG) ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG;
+		this.quality = quality;
+		this.startTime = startTime;
+		freeFrames = new ArrayBlockingQueue<Bitmap>(RING_SIZE);
+		index = new ArrayList<long[]>();
+		encodedFrame = new ByteArrayOutputStream();
+		encoder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "ScreenshotRecordingEncoder");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		offset = 8;
+	}
+
+	/**
+	 * Returns a frame bitmap from the ring. Blocks while all frames of the ring are waiting to be encoded.
+	 *
+	 * @param width the width of the frame
+	 * @param height the height of the frame
+	 * @return a mutable bitmap of the given size or {@code null} if interrupted
+	 */
+
+	public Bitmap obtainFrame(int width, int height) {
+		Bitmap frame = freeFrames.poll();
+
+		if(frame == null){
+			synchronized (this) {
+				if(createdFrames < RING_SIZE){
+					createdFrames++;
+					return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+				}
+			}
+			try {
+				frame = freeFrames.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+
+		if(frame.getWidth() != width || frame.getHeight() != height){
+			frame.recycle();
+			frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		}
+		return frame;
+	}
+
+	/**
+	 * Returns a frame to the ring without writing it.
+	 *
+	 * @param frame the frame to return
+	 */
+
+	public void releaseFrame(Bitmap frame) {
+		if(frame != null && !freeFrames.offer(frame)){
+			frame.recycle();
+		}
+	}
+
+	/**
+	 * Adds a captured frame to the recording. The frame is skipped if it is identical to the previous frame,
+	 * otherwise it is encoded and written on the encoder thread. The frame is returned to the ring in both cases.
+	 *
+	 * @param frame the captured frame
+	 * @param captureTime the uptime in milliseconds when the frame was captured
+	 * @return true if the frame differs from the previous frame and is written
+	 */
+
+	public boolean addFrame(final Bitmap frame, long captureTime) {
+		long hash = hashPixels(frame);
+		if(hash == previousHash && addedFrames > 0){
+			releaseFrame(frame);
+			return false;
+		}
+		previousHash = hash;
+		addedFrames++;
+
+		final long timestamp = captureTime - startTime;
+		encoder.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeFrame(frame, timestamp);
+				}
+				finally {
+					releaseFrame(frame);
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Waits for the remaining frames to be written, writes the index and closes the file.
+	 *
+	 * @param endTime the uptime in milliseconds when the recording ended
+	 */
+
+	public void close(final long endTime) {
+		encoder.execute(new Runnable() {
+			@Override
+			public void run() {
+				writeIndex(endTime - startTime);
+			}
+		});
+		encoder.shutdown();
+		try {
+			encoder.awaitTermination(TIMEOUT_CLOSE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ignored) {
+		}
+
+		Bitmap frame;
+		while((frame = freeFrames.poll()) != null){
+			frame.recycle();
+		}
+	}
+
+	/**
+	 * Computes a hash of all pixels of a frame, one row at a time.
+	 *
+	 * @param frame the frame to hash
+	 * @return the hash of the frame
+	 */
+
+	private long hashPixels(Bitmap frame) {
+		final int width = frame.getWidth();
+		final int height = frame.getHeight();
+
+		if(row == null || row.length != width){
+			row = new int[width];
+		}
+		long hash = 1125899906842597L;
+		for(int y = 0; y < height; y++){
+			frame.getPixels(row, 0, width, 0, y, width, 1);
+			for(int x = 0; x < width; x++){
+				hash = 31 * hash + row[x];
+			}
+		}
+		return 31 * hash + width * 31 + height;
+	}
+
+	/**
+	 * Encodes and writes a frame. Runs on the encoder thread.
+	 *
+	 * @param frame the frame to write
+	 * @param timestamp the time in milliseconds since the recording started
+	 */
+
+	private void writeFrame(Bitmap frame, long timestamp) {
+		if(out == null){
+			return;
+		}
+		encodedFrame.reset();
+		if(!frame.compress(format, quality, encodedFrame)){
+			Log.d(LOG_TAG, "Compress/Write failed");
+			return;
+		}
+		try {
+			long frameOffset = offset;
+			out.writeLong(timestamp);
+			out.writeInt(encodedFrame.size());
+			encodedFrame.writeTo(out);
+			offset += 12 + encodedFrame.size();
+			index.add(new long[]{frameOffset, timestamp});
+		} catch (IOException e) {
+			Log.d(LOG_TAG, "Can't save the screenshot recording! Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.");
+			e.printStackTrace();
+			closeQuietly();
+		}
+	}
+
+	/**
+	 * Writes the index and closes the file. Runs on the encoder thread.
+	 *
+	 * @param endTimestamp the time in milliseconds since the recording started when it ended
+	 */
+
+	private void writeIndex(long endTimestamp) {
+		if(out == null){
+			return;
+		}
+		try {
+			long indexOffset = offset;
+			out.writeInt(index.size());
+			for(long[] entry : index){
+				out.writeLong(entry[0]);
+				out.writeLong(entry[1]);
+			}
+			out.writeLong(endTimestamp);
+			out.writeLong(indexOffset);
+			out.writeInt(MAGIC);
+			out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		closeQuietly();
+	}
+
+	/**
+	 * Closes the file.
+	 */
+
+	private void closeQuietly() {
+		try {
+			out.close();
+		} catch (IOException ignored) {
+		}
+		out = null;
+	}
+}
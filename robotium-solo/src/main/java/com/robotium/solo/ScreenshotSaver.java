@@ -0,0 +1,233 @@
+package com.robotium.solo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import com.robotium.solo.Solo.Config.ScreenshotFileType;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * Encodes and saves screenshots on a pool of encoder threads.
+ * At most encoderThreads + queueSize screenshots can be in progress at the same time, further captures wait until one of them is saved.
+ * The bitmaps of saved screenshots are kept in a pool and reused for the next captures of the same size.
+ * When no screenshot is in progress the pool is trimmed to one bitmap, and it is emptied with {@link #clearBitmapPool()}.
+ */
+
+class ScreenshotSaver {
+
+	private static final String LOG_TAG = "Robotium";
+	private static final long KEEP_ALIVE_SECONDS = 10;
+	private static final int IDLE_POOLED_BITMAPS = 1;
+	private final ThreadPoolExecutor executor;
+	private final Semaphore permits;
+	private final LinkedList<Bitmap> bitmapPool;
+	private final int maxPooledBitmaps;
+
+
+	/**
+	 * Constructs this object.
+	 *
+	 * @param encoderThreads the number of threads encoding and writing screenshots
+	 * @param queueSize the number of captured screenshots that can wait for an encoder thread
+	 */
+
+	public ScreenshotSaver(int encoderThreads, int queueSize) {
+		final int threads = Math.max(1, encoderThreads);
+		final int inProgress = threads + Math.max(0, queueSize);
+
+		permits = new Semaphore(inProgress, true);
+		bitmapPool = new LinkedList<Bitmap>();
+		maxPooledBitmaps = inProgress;
+		executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private int threadCount = 0;
+
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "ScreenShotSaver-" + threadCount++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Reserves room for one screenshot. Blocks while encoderThreads + queueSize screenshots are in progress.
+	 *
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return true if room was reserved and {@link #save} or {@link #release} must follow
+	 */
+
+	public boolean acquire(long timeout) {
+		try {
+			return permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Releases room reserved with {@link #acquire} when no screenshot is saved.
+	 */
+
+	public void release() {
+		permits.release();
+	}
+
+	/**
+	 * Returns a bitmap of the given size, reused from the pool if possible.
+	 *
+	 * @param width the width of the bitmap
+	 * @param height the height of the bitmap
+	 * @param config the config of the bitmap
+	 * @return a mutable bitmap of the given size
+	 */
+
+	public Bitmap obtainBitmap(int width, int height, Bitmap.Config config) {
+		synchronized (bitmapPool) {
+			for (Bitmap bitmap : bitmapPool) {
+				if(bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config){
+					bitmapPool.remove(bitmap);
+					bitmap.eraseColor(0);
+					return bitmap;
+				}
+			}
+		}
+		return Bitmap.createBitmap(width, height, config);
+	}
+
+	/**
+	 * Returns a bitmap to the pool. The oldest pooled bitmap is recycled if the pool is full.
+	 *
+	 * @param bitmap the bitmap that is no longer used
+	 */
+
+	public void recycleBitmap(Bitmap bitmap) {
+		if(bitmap == null || bitmap.isRecycled()){
+			return;
+		}
+		synchronized (bitmapPool) {
+			bitmapPool.addFirst(bitmap);
+			if(bitmapPool.size() > maxPooledBitmaps){
+				bitmapPool.removeLast().recycle();
+			}
+		}
+	}
+
+	/**
+	 * Recycles all pooled bitmaps. Bitmaps of screenshots in progress are pooled again when they are saved.
+	 */
+
+	public void clearBitmapPool() {
+		trimBitmapPool(0);
+	}
+
+	/**
+	 * Recycles the oldest pooled bitmaps until at most the given number is left.
+	 *
+	 * @param size the number of bitmaps to keep
+	 */
+
+	private void trimBitmapPool(int size) {
+		synchronized (bitmapPool) {
+			while(bitmapPool.size() > size){
+				bitmapPool.removeLast().recycle();
+			}
+		}
+	}
+
+	/**
+	 * Encodes and saves a bitmap on an encoder thread. The bitmap is returned to the pool and
+	 * the room reserved with {@link #acquire} is released once the file has been written.
+	 *
+	 * @param bitmap the bitmap to save
+	 * @param directory the directory to save the file in
+	 * @param fileName the name of the file
+	 * @param fileType the file type to encode the bitmap as
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 * @return a {@code Future} of the saved file, which is {@code null} if the file could not be saved
+	 */
+
+	public Future<File> save(final Bitmap bitmap, final String directory, final String fileName, final ScreenshotFileType fileType, final int quality) {
+		FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+			@Override
+			public File call() {
+				try {
+					return saveFile(bitmap, directory, fileName, fileType, quality);
+				}
+				finally {
+					recycleBitmap(bitmap);
+					permits.release();
+					if(permits.availablePermits() == maxPooledBitmaps){
+						trimBitmapPool(IDLE_POOLED_BITMAPS);
+					}
+				}
+			}
+		});
+		executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Returns a {@code Future} of a screenshot that could not be taken.
+	 *
+	 * @return a {@code Future} which returns {@code null}
+	 */
+
+	public static Future<File> noFile() {
+		FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+			@Override
+			public File call() {
+				return null;
+			}
+		});
+		task.run();
+		return task;
+	}
+
+	/**
+	 * Saves a file.
+	 *
+	 * @param b the bitmap to save
+	 * @param directoryPath the directory to save the file in
+	 * @param fileName the name of the file
+	 * @param fileType the file type to encode the bitmap as
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 * @return the saved file or {@code null} if it could not be saved
+	 */
+
+	private File saveFile(Bitmap b, String directoryPath, String fileName, ScreenshotFileType fileType, int quality){
+		FileOutputStream fos = null;
+		File directory = new File(directoryPath);
+		directory.mkdir();
+
+		File fileToSave = new File(directory,fileName);
+		try {
+			fos = new FileOutputStream(fileToSave);
+			Bitmap.CompressFormat format = (fileType == ScreenshotFileType.JPEG) ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG;
+			boolean compressed = b.compress(format, quality, fos);
+			fos.flush();
+			fos.close();
+			if (compressed == false){
+				Log.d(LOG_TAG, "Compress/Write failed");
+				return null;
+			}
+			return fileToSave;
+		} catch (Exception e) {
+			Log.d(LOG_TAG, "Can't save the screenshot! Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.");
+			e.printStackTrace();
+			return null;
+		}
+	}
+}
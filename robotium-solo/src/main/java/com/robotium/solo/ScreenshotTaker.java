@@ -1,12 +1,14 @@
 package com.robotium.solo;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import com.robotium.solo.Solo.Config;
 import com.robotium.solo.Solo.Config.ScreenshotFileType;
 import android.app.Activity;
@@ -16,9 +18,6 @@ import android.graphics.Canvas;
 import android.graphics.Picture;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLSurfaceView.Renderer;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
 import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
@@ -26,7 +25,7 @@ import android.webkit.WebView;
 
 /**
  * Contains screenshot methods like: takeScreenshot(final View, final String name), startScreenshotSequence(final String name, final int quality, final int frameDelay, final int maxFrames), 
- * stopScreenshotSequence().
+ * stopScreenshotSequence(), startScreenshotRecording(final String name, final int quality, final int frameDelay, final int maxFrames), stopScreenshotRecording().
  * 
  * 
  * @author Renas Reda, renas.reda@robotium.com
@@ -36,14 +35,13 @@ import android.webkit.WebView;
 class ScreenshotTaker {
 
 	private static final long TIMEOUT_SCREENSHOT_MUTEX = TimeUnit.SECONDS.toMillis(2);
-	private final Object screenshotMutex = new Object();
 	private final Config config;
 	private final Instrumentation instrumentation;
 	private final ActivityUtils activityUtils;
 	private final String LOG_TAG = "Robotium";
 	private ScreenshotSequenceThread screenshotSequenceThread = null;
-	private HandlerThread screenShotSaverThread = null;
-	private ScreenShotSaver screenShotSaver = null;
+	private ScreenshotRecordingThread screenshotRecordingThread = null;
+	private ScreenshotSaver screenShotSaver = null;
 	private final ViewFetcher viewFetcher;
 	private final Sleeper sleeper;
 
@@ -74,25 +72,33 @@ class ScreenshotTaker {
 	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
 	 */
 	public void takeScreenshot(final String name, final int quality) {
-		View decorView = getScreenshotView();
-		if(decorView == null) 
-			return;
+		Future<File> screenshot = takeScreenshotAsync(name, quality);
 
-		initScreenShotSaver();
-		ScreenshotRunnable runnable = new ScreenshotRunnable(decorView, name, quality);
+		try {
+			screenshot.get(TIMEOUT_SCREENSHOT_MUTEX, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ignored) {
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		} catch (TimeoutException ignored) {
+		}
+	}
 
-		synchronized (screenshotMutex) {
-			Activity activity = activityUtils.getCurrentActivity(false);
-			if(activity != null)
-				activity.runOnUiThread(runnable);
-			else
-				instrumentation.runOnMainSync(runnable);
+	/**
+	 * Takes a screenshot and saves it in the {@link Config} objects save path without waiting for it to be saved.
+	 * The pixels are captured on the UI thread, and the image is then encoded and written by one of the encoder threads.
+	 * Blocks only while {@link Config#screenshotEncoderThreads} + {@link Config#screenshotQueueSize} screenshots are already in progress.
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.
+	 * 
+	 * @param name the name to give the screenshot image
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
+	 * @return a {@code Future} of the saved file, which is {@code null} if the screenshot could not be taken or saved
+	 */
+	public Future<File> takeScreenshotAsync(final String name, final int quality) {
+		View decorView = getScreenshotView();
+		if(decorView == null) 
+			return ScreenshotSaver.noFile();
 
-			try {
-				screenshotMutex.wait(TIMEOUT_SCREENSHOT_MUTEX);
-			} catch (InterruptedException ignored) {
-			}
-		}
+		return captureScreenshot(decorView, name, quality);
 	}
 
 	/**
@@ -143,6 +149,85 @@ class ScreenshotTaker {
 		}
 	}
 
+	/**
+	 * Records the screen and saves the frames in a single file with the name and the extension ".rrec" in the {@link Config} objects save path.
+	 *
+	 * Frames that are identical to the previous frame are skipped, so only the changed frames are encoded
+	 * and written together with the time they were captured. The frames are encoded on a separate thread.
+	 *
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in the 
+	 * AndroidManifest.xml of the application under test.
+	 *
+	 * At present multiple simultaneous screenshot recordings are not supported.  
+	 * This method will throw an exception if stopScreenshotRecording() has not been
+	 * called to finish any prior recording.
+	 *
+	 * @param name the name to give the recording
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 * @param frameDelay the time in milliseconds between the start of each frame
+	 * @param maxFrames the maximum number of changed frames that will comprise this recording
+	 */
+	public void startScreenshotRecording(final String name, final int quality, final int frameDelay, final int maxFrames) {
+		if(screenshotRecordingThread != null) {
+			throw new RuntimeException("only one screenshot recording is supported at a time");
+		}
+
+		screenshotRecordingThread = new ScreenshotRecordingThread(name, quality, frameDelay, maxFrames);
+
+		screenshotRecordingThread.start();
+	}
+
+	/**
+	 * Causes a screenshot recording to end and waits for the recording file to be written.
+	 * 
+	 * If this method is not called to end a recording and a prior recording is still in 
+	 * progress, startScreenshotRecording() will throw an exception.
+	 */
+	public void stopScreenshotRecording() {
+		ScreenshotRecordingThread thread = screenshotRecordingThread;
+
+		if(thread != null) {
+			thread.interrupt();
+			screenshotRecordingThread = null;
+			try {
+				thread.join(Timeout.getSmallTimeout());
+			} catch (InterruptedException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * Captures the given view on the UI thread and hands the bitmap to the {@code ScreenshotSaver}.
+	 * 
+	 * @param view the view to capture
+	 * @param name the name to give the screenshot image
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
+	 * @return a {@code Future} of the saved file
+	 */
+	private Future<File> captureScreenshot(final View view, final String name, final int quality) {
+		initScreenShotSaver();
+
+		if(!screenShotSaver.acquire(Timeout.getLargeTimeout())){
+			Log.d(LOG_TAG, "Screenshot queue is full, skipping "+name);
+			return ScreenshotSaver.noFile();
+		}
+
+		ScreenshotRunnable runnable = new ScreenshotRunnable(view);
+		Activity activity = activityUtils.getCurrentActivity(false);
+		if(activity != null)
+			activity.runOnUiThread(runnable);
+		else
+			instrumentation.runOnMainSync(runnable);
+
+		Bitmap b = runnable.awaitBitmap(TIMEOUT_SCREENSHOT_MUTEX);
+		if(b == null){
+			Log.d(LOG_TAG, "NULL BITMAP!!");
+			screenShotSaver.release();
+			return ScreenshotSaver.noFile();
+		}
+		return screenShotSaver.save(b, config.screenshotSavePath, getFileName(name), config.screenshotFileType, quality);
+	}
+
 	/**
 	 * Gets the proper view to use for a screenshot.  
 	 */
@@ -214,7 +299,7 @@ class ScreenshotTaker {
 
 	private Bitmap getBitmapOfWebView(final WebView webView){
 		Picture picture = webView.capturePicture();
-		Bitmap b = Bitmap.createBitmap( picture.getWidth(), picture.getHeight(), Bitmap.Config.ARGB_8888);
+		Bitmap b = screenShotSaver.obtainBitmap(picture.getWidth(), picture.getHeight(), Bitmap.Config.ARGB_8888);
 		Canvas c = new Canvas(b);
 		picture.draw(c);
 		return b;
@@ -243,12 +328,41 @@ class ScreenshotTaker {
 		if(config == null) {
 			config = Bitmap.Config.ARGB_8888;
 		}
-		Bitmap b = orig.copy(config, false);
+		Bitmap b = screenShotSaver.obtainBitmap(orig.getWidth(), orig.getHeight(), config);
+		new Canvas(b).drawBitmap(orig, 0, 0, null);
 		orig.recycle();
 		view.destroyDrawingCache();
 		return b; 
 	}
 
+	/**
+	 * Draws a given View into a frame of the same size.
+	 * 
+	 * @param view the view to draw
+	 * @param frame the bitmap to draw the view into
+	 * @return true if the view was drawn
+	 * 
+	 */
+
+	private boolean drawViewIntoFrame(final View view, final Bitmap frame){
+		view.destroyDrawingCache();
+		view.buildDrawingCache(false);
+		Bitmap orig = view.getDrawingCache();
+
+		if(orig == null) {
+			return false;
+		}
+
+		boolean drawn = false;
+		if(orig.getWidth() == frame.getWidth() && orig.getHeight() == frame.getHeight()){
+			new Canvas(frame).drawBitmap(orig, 0, 0, null);
+			drawn = true;
+		}
+		orig.recycle();
+		view.destroyDrawingCache();
+		return drawn;
+	}
+
 	/**
 	 * Returns a proper filename depending on if name is given or not.
 	 * 
@@ -279,14 +393,22 @@ class ScreenshotTaker {
 		return fileName;
 	}
 
+	/**
+	 * Recycles the pooled bitmaps of the screenshot saving logic.
+	 */
+
+	public synchronized void clearBitmapPool() {
+		if(screenShotSaver != null) {
+			screenShotSaver.clearBitmapPool();
+		}
+	}
+
 	/**
 	 * This method initializes the aysnc screenshot saving logic
 	 */
-	private void initScreenShotSaver() {
-		if(screenShotSaverThread == null || screenShotSaver == null) {
-			screenShotSaverThread = new HandlerThread("ScreenShotSaver");
-			screenShotSaverThread.start();
-			screenShotSaver = new ScreenShotSaver(screenShotSaverThread);
+	private synchronized void initScreenShotSaver() {
+		if(screenShotSaver == null) {
+			screenShotSaver = new ScreenshotSaver(config.screenshotEncoderThreads, config.screenshotQueueSize);
 		}
 	}
 
@@ -326,17 +448,13 @@ class ScreenshotTaker {
 
 		public void doScreenshot() {
 			View v = getScreenshotView();
-			if(v == null) keepRunning = false;
+			if(v == null) {
+				keepRunning = false;
+				return;
+			}
 			String final_name = name+"_"+seqno;
-			ScreenshotRunnable r = new ScreenshotRunnable(v, final_name, quality);
 			Log.d(LOG_TAG, "taking screenshot "+final_name);
-			Activity activity = activityUtils.getCurrentActivity(false);
-			if(activity != null){
-				activity.runOnUiThread(r);
-			}
-			else {
-				instrumentation.runOnMainSync(r);
-			}
+			captureScreenshot(v, final_name, quality);
 		}
 
 		public void interrupt() {
@@ -345,138 +463,219 @@ class ScreenshotTaker {
 		}
 	}
 
-	/**
-	 * Here we have a Runnable which is responsible for taking the actual screenshot,
-	 * and then posting the bitmap to a Handler which will save it.
-	 *
-	 * This Runnable is run on the UI thread.
+	/** 
+	 * This is the thread which records the screen in parallel with testing.
 	 */
-	private class ScreenshotRunnable implements Runnable {
-
-		private View view;
+	private class ScreenshotRecordingThread extends Thread {
 		private String name;
 		private int quality;
+		private int frameDelay;
+		private int maxFrames;
 
-		public ScreenshotRunnable(final View _view, final String _name, final int _quality) {
-			view = _view;
+		private boolean keepRunning = true;
+
+		public ScreenshotRecordingThread(String _name, int _quality, int _frameDelay, int _maxFrames) {
 			name = _name;
-			quality = _quality;
+			quality = _quality; 
+			frameDelay = _frameDelay;
+			maxFrames = _maxFrames;
 		}
 
 		public void run() {
-			if(view !=null){
-				Bitmap  b;
+			ScreenshotRecording recording = createRecording();
 
-				if(view instanceof WebView){
-					b = getBitmapOfWebView((WebView) view);
-				}
-				else{
-					b = getBitmapOfView(view);
+			if(recording != null){
+				record(recording);
+				recording.close(SystemClock.uptimeMillis());
+			}
+			if(screenshotRecordingThread == this){
+				screenshotRecordingThread = null;
+			}
+		}
+
+		private ScreenshotRecording createRecording() {
+			File directory = new File(config.screenshotSavePath);
+			directory.mkdir();
+			String fileName = (name == null) ? new SimpleDateFormat("ddMMyy-hhmmss").format(new Date()) : name;
+
+			try {
+				return new ScreenshotRecording(new File(directory, fileName + ".rrec"), config.screenshotFileType, quality, SystemClock.uptimeMillis());
+			} catch (Exception e) {
+				Log.d(LOG_TAG, "Can't save the screenshot recording! Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.");
+				e.printStackTrace();
+				return null;
+			}
+		}
+
+		private void record(ScreenshotRecording recording) {
+			View decorView = null;
+			boolean hasGLViews = false;
+			int frames = 0;
+
+			while(frames < maxFrames) {
+				if(!keepRunning || Thread.interrupted()) break;
+				final long frameStart = SystemClock.uptimeMillis();
+				View currentView = viewFetcher.getRecentDecorView(viewFetcher.getWindowDecorViews());
+
+				if(currentView != null && currentView.getWidth() > 0 && currentView.getHeight() > 0){
+					if(currentView != decorView){
+						decorView = currentView;
+						hasGLViews = !viewFetcher.getCurrentViews(GLSurfaceView.class, true, decorView).isEmpty();
+					}
+					if(hasGLViews){
+						wrapAllGLViews(decorView);
+					}
+					Bitmap frame = recording.obtainFrame(decorView.getWidth(), decorView.getHeight());
+					if(frame == null) break;
+
+					FrameRunnable runnable = new FrameRunnable(decorView, frame, recording);
+					Activity activity = activityUtils.getCurrentActivity(false);
+					if(activity != null){
+						activity.runOnUiThread(runnable);
+					}
+					else {
+						instrumentation.runOnMainSync(runnable);
+					}
+					long captureTime = runnable.awaitFrame(TIMEOUT_SCREENSHOT_MUTEX);
+					if(captureTime > 0 && recording.addFrame(frame, captureTime)){
+						frames++;
+					}
 				}
-				if(b != null) {
-					screenShotSaver.saveBitmap(b, name, quality);
-					b = null;
-					// Return here so that the screenshotMutex is not unlocked,
-					// since this is handled by save bitmap
-					return;
+
+				long delay = frameDelay - (SystemClock.uptimeMillis() - frameStart);
+				if(delay > 0){
+					try {
+						Thread.sleep(delay);
+					} catch (InterruptedException e) {
+						break;
+					}
 				}
-				else
-					Log.d(LOG_TAG, "NULL BITMAP!!");
 			}
+		}
 
-			// Make sure the screenshotMutex is unlocked
-			synchronized (screenshotMutex) {
-				screenshotMutex.notify();
-			}
+		public void interrupt() {
+			keepRunning = false;
+			super.interrupt();
 		}
 	}
 
 	/**
-	 * This class is a Handler which deals with saving the screenshots on a separate thread.
-	 *
-	 * The screenshot logic by necessity has to run on the ui thread.  However, in practice
-	 * it seems that saving a screenshot (with quality 100) takes approx twice as long
-	 * as taking it in the first place. 
-	 *
-	 * Saving the screenshots in a separate thread like this will thus make the screenshot
-	 * process approx 3x faster as far as the main thread is concerned.
+	 * Here we have a Runnable which draws one frame of a screenshot recording into a bitmap of the ring.
 	 *
+	 * This Runnable is run on the UI thread.
 	 */
-	private class ScreenShotSaver extends Handler {
-		public ScreenShotSaver(HandlerThread thread) {
-			super(thread.getLooper());
+	private class FrameRunnable implements Runnable {
+
+		private final View view;
+		private final Bitmap frame;
+		private final ScreenshotRecording recording;
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private long captureTime = 0;
+		private boolean abandoned = false;
+
+		public FrameRunnable(final View _view, final Bitmap _frame, final ScreenshotRecording _recording) {
+			view = _view;
+			frame = _frame;
+			recording = _recording;
 		}
 
-		/**
-		 * This method posts a Bitmap with meta-data to the Handler queue.
-		 *
-		 * @param bitmap the bitmap to save
-		 * @param name the name of the file
-		 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
-		 */
-		public void saveBitmap(Bitmap bitmap, String name, int quality) {
-			Message message = this.obtainMessage();
-			message.arg1 = quality;
-			message.obj = bitmap;
-			message.getData().putString("name", name);
-			this.sendMessage(message);
+		public void run() {
+			boolean drawn = drawViewIntoFrame(view, frame);
+
+			synchronized (this) {
+				if(abandoned){
+					recording.releaseFrame(frame);
+				}
+				else if(drawn) {
+					captureTime = SystemClock.uptimeMillis();
+				}
+			}
+			latch.countDown();
 		}
 
 		/**
-		 * Here we process the Handler queue and save the bitmaps.
+		 * Waits for the frame to be drawn. If it is not drawn in time, the frame is returned to the ring.
 		 *
-		 * @param message A Message containing the bitmap to save, and some metadata.
+		 * @param timeout the amount of time in milliseconds to wait
+		 * @return the uptime in milliseconds when the frame was drawn, or 0 if it was not drawn
 		 */
-		public void handleMessage(Message message) {
-			synchronized (screenshotMutex) {
-				String name = message.getData().getString("name");
-				int quality = message.arg1;
-				Bitmap b = (Bitmap)message.obj;
-				if(b != null) {
-					saveFile(name, b, quality);
-					b.recycle();
+		public long awaitFrame(long timeout) {
+			try {
+				latch.await(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			synchronized (this) {
+				if(latch.getCount() > 0){
+					abandoned = true;
+					return 0;
 				}
-				else {
-					Log.d(LOG_TAG, "NULL BITMAP!!");
+				if(captureTime == 0){
+					recording.releaseFrame(frame);
 				}
-
-				screenshotMutex.notify();
+				return captureTime;
 			}
 		}
+	}
 
-		/**
-		 * Saves a file.
-		 * 
-		 * @param name the name of the file
-		 * @param b the bitmap to save
-		 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
-		 * 
-		 */
-		private void saveFile(String name, Bitmap b, int quality){
-			FileOutputStream fos = null;
-			String fileName = getFileName(name);
+	/**
+	 * Here we have a Runnable which is responsible for taking the actual screenshot.
+	 * The bitmap is handed back to the calling thread, which passes it on to the {@code ScreenshotSaver}.
+	 *
+	 * This Runnable is run on the UI thread.
+	 */
+	private class ScreenshotRunnable implements Runnable {
 
-			File directory = new File(config.screenshotSavePath);
-			directory.mkdir();
+		private final View view;
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private Bitmap bitmap;
+		private boolean abandoned = false;
 
-			File fileToSave = new File(directory,fileName);
-			try {
-				fos = new FileOutputStream(fileToSave);
-				if(config.screenshotFileType == ScreenshotFileType.JPEG){
-					if (b.compress(Bitmap.CompressFormat.JPEG, quality, fos) == false){
-						Log.d(LOG_TAG, "Compress/Write failed");
-					}
+		public ScreenshotRunnable(final View _view) {
+			view = _view;
+		}
+
+		public void run() {
+			Bitmap b = null;
+
+			if(view !=null){
+				if(view instanceof WebView){
+					b = getBitmapOfWebView((WebView) view);
 				}
 				else{
-					if (b.compress(Bitmap.CompressFormat.PNG, quality, fos) == false){
-						Log.d(LOG_TAG, "Compress/Write failed");
-					}
+					b = getBitmapOfView(view);
 				}
-				fos.flush();
-				fos.close();
-			} catch (Exception e) {
-				Log.d(LOG_TAG, "Can't save the screenshot! Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.");
-				e.printStackTrace();
+			}
+
+			synchronized (this) {
+				if(abandoned){
+					screenShotSaver.recycleBitmap(b);
+				}
+				else {
+					bitmap = b;
+				}
+			}
+			latch.countDown();
+		}
+
+		/**
+		 * Waits for the screenshot to be taken.
+		 *
+		 * @param timeout the amount of time in milliseconds to wait
+		 * @return the bitmap or {@code null} if it could not be taken in time
+		 */
+		public Bitmap awaitBitmap(long timeout) {
+			try {
+				latch.await(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ignored) {
+			}
+
+			synchronized (this) {
+				abandoned = true;
+				Bitmap b = bitmap;
+				bitmap = null;
+				return b;
 			}
 		}
 	}
@@ -1,7 +1,6 @@
 package com.robotium.solo;
 
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Set;
 import com.robotium.solo.Solo.Config;
 import junit.framework.Assert;
@@ -13,6 +12,7 @@ import android.view.View;
 import android.view.WindowManager;
 import android.webkit.WebView;
 import android.widget.AbsListView;
+import android.widget.Adapter;
 import android.widget.GridView;
 import android.widget.ListView;
 import android.widget.ScrollView;
@@ -178,20 +178,8 @@ class Scroller {
 	 * @return {@code true} if more scrolling can be done
 	 */
 
-	@SuppressWarnings("unchecked")
 	public boolean scroll(int direction, boolean allTheWay) {
-		ArrayList<View> viewList = RobotiumUtils.removeInvisibleViews(viewFetcher.getAllViews(true));
-
-		ArrayList<View> filteredViews = RobotiumUtils.filterViewsToSet(new Class[] { ListView.class,
-				ScrollView.class, GridView.class, WebView.class}, viewList);
-
-		List<View> scrollableSupportPackageViews = viewFetcher.getScrollableSupportPackageViews(true);
-
-		for(View viewToScroll : scrollableSupportPackageViews){
-			filteredViews.add(viewToScroll);
-		}
-
-		View view = viewFetcher.getFreshestView(filteredViews);
+		View view = getViewToScroll();
 
 		if (view == null) {
 			return false;
@@ -213,6 +201,84 @@ class Scroller {
 		}
 	}
 
+	/**
+	 * Returns the view that is scrolled by {@link #scroll(int, boolean)}.
+	 *
+	 * @return the most recently drawn scrollable view or {@code null} if there is none
+	 */
+
+	private View getViewToScroll() {
+		sleeper.sleep();
+
+		// The support package views come last, since the first of the views drawn at the same time is scrolled
+		final ArrayList<View> views = viewFetcher.query()
+				.ofClass(ListView.class, ScrollView.class, GridView.class, WebView.class)
+				.ofType("widget.RecyclerView", "widget.NestedScrollView")
+				.shown()
+				.sufficientlyVisible()
+				.listByKind();
+
+		return viewFetcher.getFreshestView(views);
+	}
+
+	/**
+	 * Returns the list whose adapter can be searched before it is scrolled down, if
+	 * {@link Config#searchListAdapters} is {@code true}.
+	 *
+	 * @return the list that {@link #scrollDown()} would scroll or {@code null} if it is not an {@code AbsListView} or adapters should not be searched
+	 */
+
+	public AbsListView getListToSearch() {
+		if(!config.shouldScroll || !config.searchListAdapters) {
+			return null;
+		}
+		View view = getViewToScroll();
+		return (view instanceof AbsListView) ? (AbsListView) view : null;
+	}
+
+	/**
+	 * Searches the adapter of a list for the first item below the shown items with a text that matches the given regex.
+	 * The text of an item is given by {@link Config#adapterTextExtractor}, or by the {@code toString()} of the item if none is set.
+	 *
+	 * @param absListView the list to search
+	 * @param regex the text to search for. The parameter will be interpreted as a regular expression
+	 * @return the position of the matching item or {@code -1} if none of the items below the shown items match
+	 */
+
+	public int getPositionOfMatchingItem(final AbsListView absListView, final String regex) {
+		final int[] position = {-1};
+		final AdapterTextExtractor extractor = config.adapterTextExtractor;
+
+		inst.runOnMainSync(new Runnable(){
+			public void run(){
+				final Adapter adapter = absListView.getAdapter();
+
+				if(adapter == null){
+					return;
+				}
+				final int count = adapter.getCount();
+
+				for(int i = absListView.getLastVisiblePosition() + 1; i < count; i++){
+					String text;
+
+					if(extractor != null){
+						text = extractor.getText(adapter, i);
+					}
+					else {
+						Object item = adapter.getItem(i);
+						text = (item != null) ? item.toString() : null;
+					}
+
+					if(text != null && RobotiumUtils.isStringMatching(regex, text)){
+						position[0] = i;
+						return;
+					}
+				}
+			}
+		});
+		return position[0];
+	}
+
 	/**
 	 * Scrolls a WebView.
 	 * 
@@ -9,6 +9,7 @@ import java.util.concurrent.Callable;
 import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.TextView;
 
 
@@ -26,11 +27,14 @@ class Searcher {
 	private final WebUtils webUtils;
 	private final Scroller scroller;
 	private final Sleeper sleeper;
+	private final IdlingResourceRegistry idlingResourceRegistry;
+	private final CrashWatcher crashWatcher;
 	private final String LOG_TAG = "Robotium";
 	Set<TextView> uniqueTextViews;
 	List<WebElement> webElements;
 	private int numberOfUniqueViews;
 	private final int TIMEOUT = 5000;
+	private final int MAX_SCROLL_SEARCH_PAUSE = 300;
 
 
 	/**
@@ -40,18 +44,42 @@ class Searcher {
 	 * @param webUtils the {@code WebUtils} instance
 	 * @param scroller the {@code Scroller} instance
 	 * @param sleeper the {@code Sleeper} instance.
+	 * @param idlingResourceRegistry the {@code IdlingResourceRegistry} instance
+	 * @param crashWatcher the {@code CrashWatcher} instance
 	 */
 
-	public Searcher(ViewFetcher viewFetcher, WebUtils webUtils, Scroller scroller, Sleeper sleeper) {
+	public Searcher(ViewFetcher viewFetcher, WebUtils webUtils, Scroller scroller, Sleeper sleeper, IdlingResourceRegistry idlingResourceRegistry, CrashWatcher crashWatcher) {
 		this.viewFetcher = viewFetcher;
 		this.webUtils = webUtils;
 		this.scroller = scroller;
 		this.sleeper = sleeper;
+		this.idlingResourceRegistry = idlingResourceRegistry;
+		this.crashWatcher = crashWatcher;
 		webElements = new ArrayList<WebElement>();
 		uniqueTextViews = new HashSet<TextView>();
 	}
 
 
+	/**
+	 * Pauses before a search. Waits for the registered {@code IdlingResource}s if one of them is busy,
+	 * otherwise sleeps a default pause length. Fails at once if the {@code CrashWatcher} has seen a
+	 * fatal error in the application under test.
+	 *
+	 * @param timeout the maximum amount of time in milliseconds to wait for the idling resources
+	 * @param backoff the {@code Sleeper.Backoff} of the search loop
+	 */
+
+	private void pause(long timeout, Sleeper.Backoff backoff) {
+		crashWatcher.checkForFatalError();
+
+		if(!idlingResourceRegistry.isIdle()){
+			idlingResourceRegistry.waitForIdle(timeout);
+		}
+		else {
+			backoff.sleep();
+		}
+	}
+
 	/**
 	 * Searches for a {@code View} with the given regex string and returns {@code true} if the
 	 * searched {@code Button} is found a given number of times. Will automatically scroll when needed.
@@ -68,12 +96,13 @@ class Searcher {
 	 */
 
 	public boolean searchWithTimeoutFor(Class<? extends TextView> viewClass, String regex, int expectedMinimumNumberOfMatches, boolean scroll, boolean onlyVisible) {
-		final long endTime = SystemClock.uptimeMillis() + TIMEOUT;
+		final long endTime = Deadline.getEndTime(TIMEOUT);
 
 		TextView foundAnyMatchingView = null;
+		final Sleeper.Backoff backoff = scroll ? sleeper.backoff(MAX_SCROLL_SEARCH_PAUSE) : sleeper.backoff();
 
 		while (SystemClock.uptimeMillis() < endTime) {
-			sleeper.sleep();
+			pause(endTime - SystemClock.uptimeMillis(), backoff);
 			foundAnyMatchingView = searchFor(viewClass, regex, expectedMinimumNumberOfMatches, 0, scroll, onlyVisible);
 			if (foundAnyMatchingView !=null){
 				return true;
@@ -104,16 +133,14 @@ class Searcher {
 			expectedMinimumNumberOfMatches = 1;
 		}
 
+		final Sleeper.Backoff backoff = scroll ? sleeper.backoff(MAX_SCROLL_SEARCH_PAUSE) : sleeper.backoff();
 		final Callable<Collection<T>> viewFetcherCallback = new Callable<Collection<T>>() {
 			@SuppressWarnings("unchecked")
 			public Collection<T> call() throws Exception {
-				sleeper.sleep();
+				pause(timeout > 0 ? timeout : Timeout.getSmallTimeout(), backoff);
 	
-				ArrayList<T> viewsToReturn = viewFetcher.getCurrentViews(viewClass, true);
-
-				if(onlyVisible){
-					viewsToReturn = RobotiumUtils.removeInvisibleViews(viewsToReturn);
-				}
+				final HierarchySnapshot hierarchy = viewFetcher.getHierarchySnapshot(timeout > 0 ? timeout : Timeout.getSmallTimeout());
+				ArrayList<T> viewsToReturn = (hierarchy != null) ? hierarchy.getMatchingTextViews(viewClass, regex, onlyVisible) : new ArrayList<T>();
 		
 				if(viewClass.isAssignableFrom(TextView.class)) {
 					viewsToReturn.addAll((Collection<? extends T>) webUtils.getTextViewsFromWebView());
@@ -190,11 +217,14 @@ class Searcher {
 	 */
 
 	public <T extends TextView> T searchFor(Callable<Collection<T>> viewFetcherCallback, String regex, int expectedMinimumNumberOfMatches, long timeout, boolean scroll) throws Exception {
-		final long endTime = SystemClock.uptimeMillis() + timeout;	
+		final long endTime = Deadline.getEndTime(timeout);	
 		Collection<T> views;
+		boolean adapterSearched = false;
+		AbsListView jumpedList = null;
+		int jumpedFromPosition = 0;
 
 		while (true) {
-			final boolean timedOut = timeout > 0 && SystemClock.uptimeMillis() > endTime;
+			final boolean timedOut = (timeout > 0 && SystemClock.uptimeMillis() > endTime) || Deadline.isExpired();
 
 			if(timedOut){
 				logMatchesFound(regex);
@@ -209,6 +239,26 @@ class Searcher {
 					return view;
 				}
 			}
+			if(jumpedList != null){
+				scroller.scrollListToLine(jumpedList, jumpedFromPosition);
+				jumpedList = null;
+			}
+			else if(scroll && !adapterSearched){
+				adapterSearched = true;
+				AbsListView list = scroller.getListToSearch();
+
+				if(list != null){
+					int position = scroller.getPositionOfMatchingItem(list, regex);
+
+					if(position != -1){
+						jumpedFromPosition = list.getFirstVisiblePosition();
+						jumpedList = list;
+						scroller.scrollListToLine(list, position);
+						sleeper.sleep();
+						continue;
+					}
+				}
+			}
 			if(scroll && !scroller.scrollDown()){
 				logMatchesFound(regex);
 				return null; 
@@ -0,0 +1,18 @@
+package com.robotium.solo;
+
+/**
+ * Decides how long the wait loops sleep between their checks.<br/>
+ * Implementations may be set in {@link Solo.Config#sleepPolicy}. See {@link ExponentialSleepPolicy}.
+ */
+public interface SleepPolicy {
+
+	/**
+	 * Returns the amount of time to sleep before the next check of a wait loop.
+	 * The attempt is reset to 0 when a new loop starts and when the view tree has changed.
+	 * @param attempt the number of times the loop has slept since it started or was reset
+	 * @param maxDuration the pause length that the loop sleeps without a policy, which should not be exceeded
+	 * @return the amount of time in milliseconds to sleep
+	 */
+	public int getSleepDuration(int attempt, int maxDuration);
+
+}
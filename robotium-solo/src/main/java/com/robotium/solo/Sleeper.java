@@ -4,6 +4,7 @@ class Sleeper {
 
 	private int pauseDuration;
 	private int miniPauseDuration;
+	private SleepPolicy sleepPolicy;
 
 	private Sleeper() {
 
@@ -17,8 +18,21 @@ class Sleeper {
 	 */
 
 	public Sleeper(int pauseDuration, int miniPauseDuration) {
+		this(pauseDuration, miniPauseDuration, null);
+	}
+
+	/**
+	 * Constructs this object.
+	 *
+	 * @param pauseDuration pause duration used in {@code sleep}
+	 * @param miniPauseDuration pause duration used in {@code sleepMini}
+	 * @param sleepPolicy the {@code SleepPolicy} used by wait loops or {@code null} to always sleep the pause durations
+	 */
+
+	public Sleeper(int pauseDuration, int miniPauseDuration, SleepPolicy sleepPolicy) {
 		this.pauseDuration = pauseDuration;
 		this.miniPauseDuration = miniPauseDuration;
+		this.sleepPolicy = sleepPolicy;
 	}
 
 	/**
@@ -51,4 +65,80 @@ class Sleeper {
 		} catch (InterruptedException ignored) {}
 	}
 
+	/**
+	 * Returns a {@code Backoff} for a new wait loop.
+	 *
+	 * @return a {@code Backoff} that sleeps as decided by the {@code SleepPolicy}
+	 */
+
+	public Backoff backoff() {
+		return new Backoff(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a {@code Backoff} for a new wait loop that never sleeps longer than the given time.
+	 *
+	 * @param maxDuration the maximum length of a sleep in milliseconds
+	 * @return a {@code Backoff} that sleeps as decided by the {@code SleepPolicy}
+	 */
+
+	public Backoff backoff(int maxDuration) {
+		return new Backoff(maxDuration);
+	}
+
+	/**
+	 * The sleeps of one wait loop. Without a {@code SleepPolicy} every sleep is as long as the
+	 * given pause length, otherwise the policy decides from the number of sleeps since the loop
+	 * started or was reset.
+	 */
+
+	class Backoff {
+
+		private final int maxDuration;
+		private int attempt = 0;
+
+		private Backoff(int maxDuration) {
+			this.maxDuration = maxDuration;
+		}
+
+		/**
+		 * Sleeps at most the pause length.
+		 */
+
+		public void sleep() {
+			sleep(pauseDuration);
+		}
+
+		/**
+		 * Sleeps at most the mini pause length.
+		 */
+
+		public void sleepMini() {
+			sleep(miniPauseDuration);
+		}
+
+		/**
+		 * Sleeps at most <code>time</code> milliseconds.
+		 *
+		 * @param time the length of the sleep in milliseconds without a {@code SleepPolicy}
+		 */
+
+		public void sleep(int time) {
+			time = Math.min(time, maxDuration);
+
+			if(sleepPolicy != null){
+				time = Math.min(sleepPolicy.getSleepDuration(attempt++, time), time);
+			}
+			Sleeper.this.sleep(time);
+		}
+
+		/**
+		 * Starts over from the first sleep, e.g. after the view tree has changed.
+		 */
+
+		public void reset() {
+			attempt = 0;
+		}
+	}
+
 }
@@ -1,7 +1,10 @@
 package com.robotium.solo;
 
+import java.io.File;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Future;
 import junit.framework.Assert;
 import android.app.Activity;
 import android.app.Instrumentation;
@@ -51,6 +54,7 @@ public class Solo {
 
 	protected final Asserter asserter;
 	protected final ViewFetcher viewFetcher;
+	protected final ViewTreeWatcher viewTreeWatcher;
 	protected final Checker checker;
 	protected final Clicker clicker;
 	protected final Presser presser;
@@ -70,6 +74,10 @@ public class Solo {
 	protected final WebUtils webUtils;
 	protected final Sender sender;
 	protected final ScreenshotTaker screenshotTaker;
+	protected final LogTailer logTailer;
+	protected final IdleSynchronizer idleSynchronizer;
+	protected final IdlingResourceRegistry idlingResourceRegistry;
+	protected final CrashWatcher crashWatcher;
 	protected final Instrumentation instrumentation;
 	protected final Zoomer zoomer;
 	protected final SystemUtils systemUtils;
@@ -152,18 +160,23 @@ public class Solo {
 		
 		this.config = (config == null) ? new Config(): config;
 		this.instrumentation = instrumentation;
-		this.sleeper = new Sleeper(config.sleepDuration, config.sleepMiniDuration);
+		this.sleeper = new Sleeper(config.sleepDuration, config.sleepMiniDuration, config.sleepPolicy);
 		this.sender = new Sender(instrumentation, sleeper);
 		this.activityUtils = new ActivityUtils(config, instrumentation, activity, sleeper);
-		this.viewFetcher = new ViewFetcher(instrumentation, sleeper);
+		this.viewTreeWatcher = new ViewTreeWatcher();
+		this.viewFetcher = new ViewFetcher(config, instrumentation, sleeper, viewTreeWatcher);
 		this.screenshotTaker = new ScreenshotTaker(config, instrumentation, activityUtils, viewFetcher, sleeper);
 		this.dialogUtils = new DialogUtils(instrumentation, activityUtils, viewFetcher, sleeper);
-		this.webUtils = new WebUtils(config, instrumentation,viewFetcher, sleeper);
+		this.webUtils = new WebUtils(config, instrumentation,viewFetcher);
 		this.scroller = new Scroller(config, instrumentation, viewFetcher, sleeper);
-		this.searcher = new Searcher(viewFetcher, webUtils, scroller, sleeper);
-		this.waiter = new Waiter(instrumentation, activityUtils, viewFetcher, searcher,scroller, sleeper);
+		this.idlingResourceRegistry = new IdlingResourceRegistry();
+		this.crashWatcher = new CrashWatcher(config, activityUtils);
+		this.searcher = new Searcher(viewFetcher, webUtils, scroller, sleeper, idlingResourceRegistry, crashWatcher);
+		this.logTailer = new LogTailer();
+		this.waiter = new Waiter(config, instrumentation, activityUtils, viewFetcher, viewTreeWatcher, searcher,scroller, sleeper, logTailer, idlingResourceRegistry, crashWatcher, webUtils);
 		this.getter = new Getter(instrumentation, activityUtils, waiter);
-		this.clicker = new Clicker(activityUtils, viewFetcher,sender, instrumentation, sleeper, waiter, webUtils, dialogUtils);
+		this.idleSynchronizer = new IdleSynchronizer(viewFetcher);
+		this.clicker = new Clicker(config, activityUtils, viewFetcher,sender, instrumentation, sleeper, waiter, webUtils, dialogUtils, idleSynchronizer);
 		this.setter = new Setter(activityUtils, getter, clicker, waiter);
 		this.asserter = new Asserter(activityUtils, waiter);
 		this.checker = new Checker(viewFetcher, waiter);
@@ -208,6 +221,21 @@ public class Solo {
 		 */
 		public int timeout_large = 20000;
 
+		/**
+		 * The total amount of time in milliseconds that the wait methods may use during a test, counted from when Solo is constructed. When it is used up, the wait methods time out at once. Default value is 0, which means no limit.
+		 */
+		public int testBudget = 0;
+
+		/**
+		 * Set to true if the wait methods should fail at once when the application under test has crashed with an uncaught exception, its main thread has stalled or all its activities have been finished. While it is true, uncaught exceptions are logged and recorded, and only those of the main thread are passed on to the default handler, so the others do not end the process before a wait method can fail with them. An uncaught exception that no wait method has failed with fails {@link Solo#finishOpenedActivities()}. Default value is false.
+		 */
+		public boolean failFast = false;
+
+		/**
+		 * The amount of time in milliseconds that the main thread may be unresponsive, or the activity stack empty, before {@link #failFast} fails the wait methods. 0 only fails on uncaught exceptions. Default value is 5000.
+		 */
+		public int stallTimeout = 5000;
+
 		/**
 		 * The screenshot save path. Default save path is /sdcard/Robotium-Screenshots/.
 		 */
@@ -218,16 +246,41 @@ public class Solo {
 		 */
 		public ScreenshotFileType screenshotFileType = ScreenshotFileType.JPEG;
 
+		/**
+		 * The number of threads that encode and save screenshots. Default value is 2.
+		 */
+		public int screenshotEncoderThreads = 2;
+
+		/**
+		 * The number of captured screenshots that can wait for an encoder thread before taking a screenshot blocks. Default value is 4.
+		 */
+		public int screenshotQueueSize = 4;
+
 		/**
 		 * Set to true if the get, is, set, enter, type and click methods should scroll. Default value is true.
 		 */
 		public boolean shouldScroll = true;
 
+		/**
+		 * Set to true if the text search methods should search the adapter of a list before scrolling it, and scroll directly to the first item whose text matches. Default value is false.
+		 */
+		public boolean searchListAdapters = false;
+
+		/**
+		 * The {@link AdapterTextExtractor} giving the text of a list item when {@link #searchListAdapters} is true. Default value is null, which uses the {@code toString()} of the item.
+		 */
+		public AdapterTextExtractor adapterTextExtractor = null;
+
 		/**
 		 * Set to true if JavaScript should be used to click WebElements. Default value is false.
 		 */
 		public boolean useJavaScriptToClickWebElements = false;
 
+		/**
+		 * Set to true if the click methods should fail when the view to click is covered at the click location by a clickable, long clickable or focusable view that is neither inside it nor one of its parents. Default value is false.
+		 */
+		public boolean verifyClickTargets = false;
+
 		/**
 		 * The screenshot file type, JPEG or PNG.
 		 *
@@ -243,12 +296,24 @@ public class Solo {
 		 */
 
 		public boolean trackActivities = true;
+
+		/**
+		 * Set to true if waitForActivity should log the time in milliseconds between the creation and the resume of the Activity it waited for. Default value is false.
+		 */
+
+		public boolean logActivityResumeLatency = false;
 		
 		/**
 		 * Set the web frame to be used by Robotium. Default value is document.  
 		 */
 		
 		public String webFrame = "document";
+
+		/**
+		 * Set to true if RobotiumWeb.js should only be injected once per web page. Following web calls then only send the function to execute, and the JavaScript is injected again after a page navigation. Default value is false.
+		 */
+
+		public boolean installJavaScriptOnce = false;
 		
 		/**
 		 *  Set to true if logging should be enabled. Default value is false.
@@ -272,6 +337,26 @@ public class Solo {
 		 */
 		public int sleepMiniDuration = 300;
 
+		/**
+		 * The {@link SleepPolicy} deciding how long the wait loops sleep between their checks, e.g. an {@link ExponentialSleepPolicy}. Loops never sleep longer than {@link #sleepDuration} and {@link #sleepMiniDuration}. Default value is null, which always sleeps those durations.
+		 */
+		public SleepPolicy sleepPolicy = null;
+
+		/**
+		 * Set to true if the waitFor methods should check again as soon as the view tree changes, instead of only after each {@link #sleepDuration}. Default value is false.
+		 */
+		public boolean wakeOnViewTreeChanges = false;
+
+		/**
+		 * Set to true if clicks should wait for the main looper to be idle and the views to be laid out and drawn, instead of sleeping fixed pauses. Default value is false.
+		 */
+		public boolean syncWithMainLooper = false;
+
+		/**
+		 * The maximum time in milliseconds that clicks wait for the main looper to be idle when {@link #syncWithMainLooper} is true. Default length is 1000 milliseconds.
+		 */
+		public int syncTimeout = 1000;
+
 	}
 
 	/**
@@ -372,6 +457,75 @@ public class Solo {
 		return topParent;
 	}
 
+	/**
+	 * Returns the shown View on top at the specified location on the screen.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the {@link View} at the location or {@code null} if there is none
+	 */
+
+	public View getViewAt(float x, float y) {
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "getViewAt("+x+", "+y+")");
+		}
+
+		return viewFetcher.getViewAt((int) x, (int) y, false);
+	}
+
+	/**
+	 * Returns the shown Views that overlap the specified region of the screen.
+	 *
+	 * @param left the left edge of the region
+	 * @param top the top edge of the region
+	 * @param right the right edge of the region
+	 * @param bottom the bottom edge of the region
+	 * @return an {@code ArrayList} of the {@link View}s in the region
+	 */
+
+	public ArrayList<View> getViewsInRegion(int left, int top, int right, int bottom) {
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "getViewsInRegion("+left+", "+top+", "+right+", "+bottom+")");
+		}
+
+		return viewFetcher.getViewsInRegion(left, top, right, bottom);
+	}
+
+	/**
+	 * Returns the shown View of the specified class that is nearest to the specified location on the screen.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param viewClass the class of the {@link View}, e.g. {@code EditText.class}
+	 * @return the nearest {@link View} or {@code null} if there is none
+	 */
+
+	public <T extends View> T getNearestView(float x, float y, Class<T> viewClass) {
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "getNearestView("+x+", "+y+", "+viewClass+")");
+		}
+
+		return viewFetcher.getNearestView((int) x, (int) y, viewClass);
+	}
+
+	/**
+	 * Returns the shown View of the specified class that is nearest to the specified View in the specified direction,
+	 * e.g. the {@code EditText} to the right of a label. Views that contain the specified View or are contained by it are not returned.
+	 *
+	 * @param view the {@link View} to start from
+	 * @param direction the direction to look in. {@link #UP}, {@link #DOWN}, {@link #LEFT} or {@link #RIGHT}
+	 * @param viewClass the class of the {@link View}, e.g. {@code EditText.class}
+	 * @return the nearest {@link View} in the direction or {@code null} if there is none
+	 */
+
+	public <T extends View> T getViewNextTo(View view, int direction, Class<T> viewClass) {
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "getViewNextTo("+view+", "+direction+", "+viewClass+")");
+		}
+
+		return viewFetcher.getViewNextTo(view, direction, viewClass);
+	}
+
 	/**
 	 * Waits for the specified text to appear. Default timeout is 20 seconds.
 	 *
@@ -721,6 +875,129 @@ public class Solo {
 		return waiter.waitForCondition(condition, timeout);
 	}
 
+	/**
+	 * Waits for any of the given conditions to be satisfied. All conditions are checked against one
+	 * traversal of the view tree each time they are checked. Default timeout is 20 seconds.
+	 * <br><br>
+	 * Example of usage:
+	 * <pre>
+	 *  int match = solo.waitForAny(ScreenCondition.text("Welcome"), ScreenCondition.text("Error"));
+	 * </pre>
+	 *
+	 * @param conditions the conditions to wait for, e.g. {@code ScreenCondition.text("Done")} or {@code ScreenCondition.view(R.id.error)}
+	 * @return the index of the first satisfied condition or {@code -1} if none of them is satisfied before the timeout
+	 */
+
+	public int waitForAny(ScreenCondition... conditions){
+		return waitForAny(Timeout.getLargeTimeout(), conditions);
+	}
+
+	/**
+	 * Waits for any of the given conditions to be satisfied. All conditions are checked against one
+	 * traversal of the view tree each time they are checked.
+	 *
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @param conditions the conditions to wait for, e.g. {@code ScreenCondition.text("Done")} or {@code ScreenCondition.view(R.id.error)}
+	 * @return the index of the first satisfied condition or {@code -1} if none of them is satisfied before the timeout
+	 */
+
+	public int waitForAny(int timeout, ScreenCondition... conditions){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "waitForAny("+timeout+", "+Arrays.toString(conditions)+")");
+		}
+
+		return waiter.waitForAny(conditions, timeout);
+	}
+
+	/**
+	 * Waits for all of the given conditions to be satisfied at the same time. All conditions are checked
+	 * against one traversal of the view tree each time they are checked. Default timeout is 20 seconds.
+	 *
+	 * @param conditions the conditions to wait for, e.g. {@code ScreenCondition.text("Done")} or {@code ScreenCondition.view(R.id.list)}
+	 * @return {@code true} if all conditions are satisfied and {@code false} if they are not satisfied before the timeout
+	 */
+
+	public boolean waitForAll(ScreenCondition... conditions){
+		return waitForAll(Timeout.getLargeTimeout(), conditions);
+	}
+
+	/**
+	 * Waits for all of the given conditions to be satisfied at the same time. All conditions are checked
+	 * against one traversal of the view tree each time they are checked.
+	 *
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @param conditions the conditions to wait for, e.g. {@code ScreenCondition.text("Done")} or {@code ScreenCondition.view(R.id.list)}
+	 * @return {@code true} if all conditions are satisfied and {@code false} if they are not satisfied before the timeout
+	 */
+
+	public boolean waitForAll(int timeout, ScreenCondition... conditions){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "waitForAll("+timeout+", "+Arrays.toString(conditions)+")");
+		}
+
+		return waiter.waitForAll(conditions, timeout);
+	}
+
+	/**
+	 * Waits for the screen to stop changing, e.g. after a navigation or an animation. Returns as soon as
+	 * no view has moved, appeared, disappeared or changed its text for the given quiet time. Default timeout is 20 seconds.
+	 *
+	 * @param quietTime the amount of time in milliseconds that the screen must stay unchanged
+	 * @return {@code true} if the screen settled and {@code false} if it was still changing at the timeout
+	 */
+
+	public boolean waitForScreenToSettle(int quietTime){
+		return waitForScreenToSettle(quietTime, Timeout.getLargeTimeout());
+	}
+
+	/**
+	 * Waits for the screen to stop changing, e.g. after a navigation or an animation. Returns as soon as
+	 * no view has moved, appeared, disappeared or changed its text for the given quiet time.
+	 *
+	 * @param quietTime the amount of time in milliseconds that the screen must stay unchanged
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return {@code true} if the screen settled and {@code false} if it was still changing at the timeout
+	 */
+
+	public boolean waitForScreenToSettle(int quietTime, int timeout){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "waitForScreenToSettle("+quietTime+", "+timeout+")");
+		}
+
+		return waiter.waitForScreenToSettle(quietTime, timeout);
+	}
+
+	/**
+	 * Registers an {@link IdlingResource}. The wait and search methods wait for all registered resources
+	 * to be idle before they check the views, instead of sleeping a default pause length.
+	 *
+	 * @param idlingResource the resource to register
+	 * @return {@code true} if the resource was registered and {@code false} if it was already registered
+	 */
+
+	public boolean registerIdlingResource(IdlingResource idlingResource){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "registerIdlingResource("+idlingResource+")");
+		}
+		
+		return idlingResourceRegistry.register(idlingResource);
+	}
+
+	/**
+	 * Unregisters an {@link IdlingResource}.
+	 *
+	 * @param idlingResource the resource to unregister
+	 * @return {@code true} if the resource was unregistered and {@code false} if it was not registered
+	 */
+
+	public boolean unregisterIdlingResource(IdlingResource idlingResource){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "unregisterIdlingResource("+idlingResource+")");
+		}
+		
+		return idlingResourceRegistry.unregister(idlingResource);
+	}
+
 	/**
 	 * Searches for a text in the EditText objects currently displayed and returns true if found. Will automatically scroll when needed.
 	 *
@@ -3834,7 +4111,12 @@ public class Solo {
 			Log.d(config.commandLoggingTag, "finishOpenedActivities()");
 		}
 		
+		Deadline.stopTestBudget();
+		viewTreeWatcher.stopObserving();
+		logTailer.stop();
+		screenshotTaker.clearBitmapPool();
 		activityUtils.finishOpenedActivities();
+		crashWatcher.stop();
 	}
 
 	/**
@@ -3881,6 +4163,24 @@ public class Solo {
 		screenshotTaker.takeScreenshot(name, quality);
 	}
 
+	/**
+	 * Takes a screenshot and saves the image with the specified name in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
+	 * Returns as soon as the screenshot is taken, the image is encoded and saved on a separate thread.
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.
+	 *
+	 * @param name the name to give the screenshot
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 * @return a {@code Future} of the saved file, which is {@code null} if the screenshot could not be taken or saved
+	 */
+
+	public Future<File> takeScreenshotAsync(String name, int quality){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "takeScreenshotAsync(\""+name+"\", "+quality+")");
+		}
+		
+		return screenshotTaker.takeScreenshotAsync(name, quality);
+	}
+
 	/**
 	 * Takes a screenshot sequence and saves the images with the specified name prefix in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
 	 *
@@ -3954,6 +4254,72 @@ public class Solo {
 		screenshotTaker.stopScreenshotSequence();
 	}
 
+	/**
+	 * Records the screen and saves the frames in a single file with the specified name and the extension ".rrec" in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
+	 *
+	 * Frames that are identical to the previous frame are skipped. Each changed frame is saved together with the time it was captured.
+	 *
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.
+	 *
+	 * At present multiple simultaneous screenshot recordings are not supported.
+	 * This method will throw an exception if stopScreenshotRecording() has not been
+	 * called to finish any prior recording.
+	 * Calling this method is equivalent to calling startScreenshotRecording(name, 80, 50, 1000);
+	 *
+	 * @param name the name to give the recording
+	 */
+
+	public void startScreenshotRecording(String name) {
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "startScreenshotRecording(\""+name+"\")");
+		}
+		
+		startScreenshotRecording(name,
+				80, // quality
+				50, // 50 ms frame delay
+				1000); // max frames
+	}
+
+	/**
+	 * Records the screen and saves the frames in a single file with the specified name and the extension ".rrec" in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
+	 *
+	 * Frames that are identical to the previous frame are skipped. Each changed frame is saved together with the time it was captured.
+	 *
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.
+	 *
+	 * At present multiple simultaneous screenshot recordings are not supported.
+	 * This method will throw an exception if stopScreenshotRecording() has not been
+	 * called to finish any prior recording.
+	 *
+	 * @param name the name to give the recording
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 * @param frameDelay the time in milliseconds between the start of each frame
+	 * @param maxFrames the maximum number of changed frames that will comprise this recording
+	 */
+
+	public void startScreenshotRecording(String name, int quality, int frameDelay, int maxFrames) {
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "startScreenshotRecording(\""+name+"\", "+quality+", "+frameDelay+", "+maxFrames+")");
+		}
+		
+		screenshotTaker.startScreenshotRecording(name, quality, frameDelay, maxFrames);
+	}
+
+	/**
+	 * Causes a screenshot recording to end and waits for the recording file to be written.
+	 *
+	 * If this method is not called to end a recording and a prior recording is still in
+	 * progress, startScreenshotRecording() will throw an exception.
+	 */
+
+	public void stopScreenshotRecording() {
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "stopScreenshotRecording()");
+		}
+		
+		screenshotTaker.stopScreenshotRecording();
+	}
+
 
 	/**
 	 * Initialize timeout using 'adb shell setprop' or use setLargeTimeout() and setSmallTimeout(). Will fall back to the default values set by {@link Config}.
@@ -3966,6 +4332,17 @@ public class Solo {
 		
 		Timeout.setLargeTimeout(initializeTimeout("solo_large_timeout", config.timeout_large));
 		Timeout.setSmallTimeout(initializeTimeout("solo_small_timeout", config.timeout_small));
+
+		if(config.testBudget > 0){
+			Deadline.startTestBudget(config.testBudget);
+		}
+		else {
+			Deadline.stopTestBudget();
+		}
+
+		if(config.failFast){
+			crashWatcher.start();
+		}
 	}
 
 	/**
@@ -0,0 +1,399 @@
+package com.robotium.solo;
+
+import java.util.Arrays;
+
+
+/**
+ * A grid over the screen bounds of the views of a {@link HierarchySnapshot}. Each cell lists the
+ * views whose bounds overlap it, so that point, region, nearest and directional queries only look
+ * at the views close to the location. The index is built once per snapshot and therefore follows
+ * the hierarchy as it changes. Only views that were shown and have a size after being clipped to
+ * their ancestors are indexed.
+ * <br><br>
+ * The queries return indexes of the snapshot. Views are taken to be drawn in traversal order within
+ * a window, and the windows in the order of their layers. Elevation and the drawing order set by
+ * the view groups are not considered.
+ */
+
+final class ViewBoundsIndex {
+
+	private static final int CELL_SIZE = 64;
+	private static final int MAX_CELLS_PER_AXIS = 32;
+	private static final long MAJOR_AXIS_WEIGHT = 13;
+
+	private final HierarchySnapshot hierarchy;
+	private final int left;
+	private final int top;
+	private final int columns;
+	private final int rows;
+	private final int cellWidth;
+	private final int cellHeight;
+	private final int[] cellStarts;
+	private final int[] cellViews;
+
+
+	/**
+	 * Constructs this object and indexes the views of the snapshot. Indexes are created with
+	 * {@link HierarchySnapshot#getBoundsIndex()}.
+	 *
+	 * @param hierarchy the snapshot to index
+	 */
+
+	ViewBoundsIndex(HierarchySnapshot hierarchy) {
+		this.hierarchy = hierarchy;
+		final int size = hierarchy.size();
+		int minX = Integer.MAX_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int maxY = Integer.MIN_VALUE;
+
+		for(int i = 0; i < size; i++){
+			if(isIndexed(i)){
+				minX = Math.min(minX, hierarchy.getLeft(i));
+				minY = Math.min(minY, hierarchy.getTop(i));
+				maxX = Math.max(maxX, hierarchy.getRight(i));
+				maxY = Math.max(maxY, hierarchy.getBottom(i));
+			}
+		}
+		if(minX > maxX){
+			minX = minY = 0;
+			maxX = maxY = 1;
+		}
+		left = minX;
+		top = minY;
+		columns = getCellCount(maxX - minX);
+		rows = getCellCount(maxY - minY);
+		cellWidth = Math.max(1, (maxX - minX + columns - 1) / columns);
+		cellHeight = Math.max(1, (maxY - minY + rows - 1) / rows);
+
+		final int cells = columns * rows;
+		cellStarts = new int[cells + 1];
+
+		for(int i = 0; i < size; i++){
+			if(isIndexed(i)){
+				forEachCell(i, cellStarts, null);
+			}
+		}
+		for(int cell = 0; cell < cells; cell++){
+			cellStarts[cell + 1] += cellStarts[cell];
+		}
+		cellViews = new int[cellStarts[cells]];
+		final int[] nextPositions = Arrays.copyOf(cellStarts, cells);
+
+		for(int i = 0; i < size; i++){
+			if(isIndexed(i)){
+				forEachCell(i, null, nextPositions);
+			}
+		}
+	}
+
+	/**
+	 * Returns the view on top at a location.
+	 *
+	 * @param x the x coordinate on the screen
+	 * @param y the y coordinate on the screen
+	 * @param onlyTouchable {@code true} if views that do not receive touches should be passed over, as a touch passes through them
+	 * @return the index of the view or {@code -1} if there is no view at the location
+	 */
+
+	int getViewAt(int x, int y, boolean onlyTouchable) {
+		final int cell = getRow(y) * columns + getColumn(x);
+		int found = -1;
+
+		for(int j = cellStarts[cell]; j < cellStarts[cell + 1]; j++){
+			final int index = cellViews[j];
+
+			if(onlyTouchable && !hierarchy.isTouchable(index)){
+				continue;
+			}
+			if(getDistanceSquared(index, x, y) == 0 && (found < 0 || isAbove(index, found))){
+				found = index;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the views that overlap a region.
+	 *
+	 * @param regionLeft the left edge of the region on the screen
+	 * @param regionTop the top edge of the region on the screen
+	 * @param regionRight the right edge of the region on the screen, exclusive
+	 * @param regionBottom the bottom edge of the region on the screen, exclusive
+	 * @return the indexes of the views, in traversal order
+	 */
+
+	int[] getViewsIn(int regionLeft, int regionTop, int regionRight, int regionBottom) {
+		if(regionRight <= regionLeft || regionBottom <= regionTop){
+			return new int[0];
+		}
+		final boolean[] checked = new boolean[hierarchy.size()];
+		int[] found = new int[16];
+		int count = 0;
+
+		for(int row = getRow(regionTop); row <= getRow(regionBottom - 1); row++){
+			for(int column = getColumn(regionLeft); column <= getColumn(regionRight - 1); column++){
+				final int cell = row * columns + column;
+
+				for(int j = cellStarts[cell]; j < cellStarts[cell + 1]; j++){
+					final int index = cellViews[j];
+
+					if(checked[index]){
+						continue;
+					}
+					checked[index] = true;
+
+					if(hierarchy.getLeft(index) < regionRight && hierarchy.getRight(index) > regionLeft
+							&& hierarchy.getTop(index) < regionBottom && hierarchy.getBottom(index) > regionTop){
+						if(count == found.length){
+							found = Arrays.copyOf(found, count * 2);
+						}
+						found[count++] = index;
+					}
+				}
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * Returns the view of a class that is nearest to a location. The cells are searched in rings
+	 * around the location until no closer view can be found. Of views at the same distance, the
+	 * one on top is returned.
+	 *
+	 * @param x the x coordinate on the screen
+	 * @param y the y coordinate on the screen
+	 * @param viewClass the class of the view, subclasses included, or {@code null} for any view
+	 * @return the index of the view or {@code -1} if there is none
+	 */
+
+	int getNearest(int x, int y, Class<?> viewClass) {
+		final int column = getColumn(x);
+		final int row = getRow(y);
+		final int maxRing = Math.max(Math.max(column, columns - 1 - column), Math.max(row, rows - 1 - row));
+		final boolean[] checked = new boolean[hierarchy.size()];
+		long bestDistance = Long.MAX_VALUE;
+		int found = -1;
+
+		for(int ring = 0; ring <= maxRing; ring++){
+			for(int r = Math.max(0, row - ring); r <= Math.min(rows - 1, row + ring); r++){
+				for(int c = Math.max(0, column - ring); c <= Math.min(columns - 1, column + ring); c++){
+					if(Math.max(Math.abs(r - row), Math.abs(c - column)) != ring){
+						continue;
+					}
+					final int cell = r * columns + c;
+
+					for(int j = cellStarts[cell]; j < cellStarts[cell + 1]; j++){
+						final int index = cellViews[j];
+
+						if(checked[index]){
+							continue;
+						}
+						checked[index] = true;
+
+						if(!isOfClass(index, viewClass)){
+							continue;
+						}
+						final long distance = getDistanceSquared(index, x, y);
+
+						if(distance < bestDistance || (distance == bestDistance && isAbove(index, found))){
+							bestDistance = distance;
+							found = index;
+						}
+					}
+				}
+			}
+			final long reach = (long) ring * Math.min(cellWidth, cellHeight);
+
+			if(found >= 0 && bestDistance < reach * reach){
+				break;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the view of a class that is nearest to a view in a direction. A view is in the
+	 * direction if it reaches further in that direction and starts at or beyond the start of the
+	 * given view. Views are ranked by the gap along the direction, weighted, and the offset of their
+	 * centers across it, in the same way as focus navigation. Views that contain the given view or
+	 * are contained by it are not returned.
+	 *
+	 * @param anchor the index of the view to start from
+	 * @param direction {@link Solo#UP}, {@link Solo#DOWN}, {@link Solo#LEFT} or {@link Solo#RIGHT}
+	 * @param viewClass the class of the view, subclasses included, or {@code null} for any view
+	 * @return the index of the view or {@code -1} if there is none
+	 */
+
+	int getNearestInDirection(int anchor, int direction, Class<?> viewClass) {
+		final boolean horizontal;
+		final boolean forward;
+
+		switch (direction) {
+		case Solo.UP:
+			horizontal = false;
+			forward = false;
+			break;
+		case Solo.DOWN:
+			horizontal = false;
+			forward = true;
+			break;
+		case Solo.LEFT:
+			horizontal = true;
+			forward = false;
+			break;
+		case Solo.RIGHT:
+			horizontal = true;
+			forward = true;
+			break;
+		default:
+			throw new IllegalArgumentException("Direction must be Solo.UP, Solo.DOWN, Solo.LEFT or Solo.RIGHT.");
+		}
+		final int start = horizontal ? hierarchy.getLeft(anchor) : hierarchy.getTop(anchor);
+		final int end = horizontal ? hierarchy.getRight(anchor) : hierarchy.getBottom(anchor);
+		final int crossCenter = horizontal ? hierarchy.getTop(anchor) + hierarchy.getBottom(anchor) : hierarchy.getLeft(anchor) + hierarchy.getRight(anchor);
+		final int lines = horizontal ? columns : rows;
+		final int crossLines = horizontal ? rows : columns;
+		final int cellLength = horizontal ? cellWidth : cellHeight;
+		final int gridStart = horizontal ? left : top;
+		final int firstLine = horizontal ? getColumn(forward ? start : end - 1) : getRow(forward ? start : end - 1);
+		final boolean[] checked = new boolean[hierarchy.size()];
+		long bestScore = Long.MAX_VALUE;
+		int found = -1;
+
+		for(int line = firstLine; line >= 0 && line < lines; line += forward ? 1 : -1){
+			if(found >= 0 && line != firstLine){
+				final long gap = forward ? gridStart + (long) line * cellLength - end : start - (gridStart + (long) (line + 1) * cellLength);
+
+				if(gap > 0 && MAJOR_AXIS_WEIGHT * gap * gap > bestScore){
+					break;
+				}
+			}
+			for(int cross = 0; cross < crossLines; cross++){
+				final int cell = horizontal ? cross * columns + line : line * columns + cross;
+
+				for(int j = cellStarts[cell]; j < cellStarts[cell + 1]; j++){
+					final int index = cellViews[j];
+
+					if(checked[index]){
+						continue;
+					}
+					checked[index] = true;
+
+					final int candidateStart = horizontal ? hierarchy.getLeft(index) : hierarchy.getTop(index);
+					final int candidateEnd = horizontal ? hierarchy.getRight(index) : hierarchy.getBottom(index);
+					final boolean inDirection = forward ? (start < candidateStart || end <= candidateStart) && end < candidateEnd
+							: (end > candidateEnd || start >= candidateEnd) && start > candidateStart;
+
+					if(!inDirection || !isOfClass(index, viewClass) || isRelated(anchor, index)){
+						continue;
+					}
+					final long major = Math.max(0, forward ? candidateStart - end : start - candidateEnd);
+					final long minor = Math.abs(crossCenter - (horizontal ? hierarchy.getTop(index) + hierarchy.getBottom(index)
+							: hierarchy.getLeft(index) + hierarchy.getRight(index))) / 2;
+					final long score = MAJOR_AXIS_WEIGHT * major * major + minor * minor;
+
+					if(score < bestScore){
+						bestScore = score;
+						found = index;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Counts a view in the cells it overlaps, or stores it in them.
+	 *
+	 * @param index the index of the view
+	 * @param counts the counts to increase, shifted by one cell, or {@code null}
+	 * @param nextPositions the next free position of each cell in {@code cellViews}, or {@code null}
+	 */
+
+	private void forEachCell(int index, int[] counts, int[] nextPositions) {
+		final int lastRow = getRow(hierarchy.getBottom(index) - 1);
+		final int lastColumn = getColumn(hierarchy.getRight(index) - 1);
+
+		for(int row = getRow(hierarchy.getTop(index)); row <= lastRow; row++){
+			for(int column = getColumn(hierarchy.getLeft(index)); column <= lastColumn; column++){
+				final int cell = row * columns + column;
+
+				if(counts != null){
+					counts[cell + 1]++;
+				}
+				else {
+					cellViews[nextPositions[cell]++] = index;
+				}
+			}
+		}
+	}
+
+	private boolean isIndexed(int index) {
+		return hierarchy.isShown(index) && hierarchy.getRight(index) > hierarchy.getLeft(index)
+				&& hierarchy.getBottom(index) > hierarchy.getTop(index);
+	}
+
+	private boolean isOfClass(int index, Class<?> viewClass) {
+		return viewClass == null || viewClass.isAssignableFrom(hierarchy.getViewClass(index));
+	}
+
+	/**
+	 * Returns true if a view is drawn above another view.
+	 *
+	 * @param index the index of the view
+	 * @param other the index of the other view or {@code -1}
+	 * @return true if the view is drawn above the other view
+	 */
+
+	private boolean isAbove(int index, int other) {
+		if(other < 0){
+			return true;
+		}
+		final int layer = hierarchy.getLayer(index);
+		final int otherLayer = hierarchy.getLayer(other);
+		return layer != otherLayer ? layer > otherLayer : index > other;
+	}
+
+	/**
+	 * Returns true if one of the views contains the other in the hierarchy.
+	 *
+	 * @param index the index of a view
+	 * @param other the index of the other view
+	 * @return true if the views are the same or one is an ancestor of the other
+	 */
+
+	private boolean isRelated(int index, int other) {
+		for(int i = index; i >= 0; i = hierarchy.getParent(i)){
+			if(i == other){
+				return true;
+			}
+		}
+		for(int i = other; i >= 0; i = hierarchy.getParent(i)){
+			if(i == index){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private long getDistanceSquared(int index, int x, int y) {
+		final long dx = Math.max(0, Math.max(hierarchy.getLeft(index) - x, x - hierarchy.getRight(index) + 1));
+		final long dy = Math.max(0, Math.max(hierarchy.getTop(index) - y, y - hierarchy.getBottom(index) + 1));
+		return dx * dx + dy * dy;
+	}
+
+	private int getColumn(int x) {
+		return Math.max(0, Math.min(columns - 1, (x - left) / cellWidth));
+	}
+
+	private int getRow(int y) {
+		return Math.max(0, Math.min(rows - 1, (y - top) / cellHeight));
+	}
+
+	private static int getCellCount(int length) {
+		return Math.max(1, Math.min(MAX_CELLS_PER_AXIS, (length + CELL_SIZE - 1) / CELL_SIZE));
+	}
+}
@@ -2,17 +2,24 @@ package com.robotium.solo;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import com.robotium.solo.Solo.Config;
 import android.app.Instrumentation;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.view.WindowManager;
-import android.webkit.WebView;
 import android.widget.TextView;
 
 /**
@@ -25,20 +32,38 @@ import android.widget.TextView;
 
 class ViewFetcher {
 
+	private final Config config;
 	private String windowManagerString;
 	private Instrumentation instrumentation;
 	private Sleeper sleeper;
+	private final ViewTreeWatcher viewTreeWatcher;
+	private volatile ViewTreeSnapshot snapshot;
+	private Field viewsField;
+	private Field instanceField;
+	private Configuration displayConfiguration;
+	private int displayHeight;
+	private final Handler mainHandler;
+	private FutureTask<HierarchySnapshot> pendingCapture;
+	private View[] pendingCaptureViews;
+	private static final long FINGERPRINT_SEED = 0xcbf29ce484222325L;
+	private static final long FINGERPRINT_PRIME = 0x100000001b3L;
 
 	/**
 	 * Constructs this object.
 	 *
+	 * @param config the {@code Config} instance
 	 * @param instrumentation the {@code Instrumentation} instance.
+	 * @param sleeper the {@code Sleeper} instance
+	 * @param viewTreeWatcher the {@code ViewTreeWatcher} instance
 	 *
 	 */
 
-	public ViewFetcher(Instrumentation instrumentation, Sleeper sleeper) {
+	public ViewFetcher(Config config, Instrumentation instrumentation, Sleeper sleeper, ViewTreeWatcher viewTreeWatcher) {
+		this.config = config;
 		this.instrumentation = instrumentation;
 		this.sleeper = sleeper;
+		this.viewTreeWatcher = viewTreeWatcher;
+		this.mainHandler = new Handler(Looper.getMainLooper());
 		setWindowManagerString();
 	}
 
@@ -70,7 +95,7 @@ class ViewFetcher {
 
 	public View getScrollOrListParent(View view) {
 
-		if (!(view instanceof android.widget.AbsListView) && !(view instanceof android.widget.ScrollView) && !(view instanceof WebView)) {
+		if (!ViewTypes.is(view, ViewTypes.SCROLL_OR_LIST_VIEW)) {
 			try{
 				return getScrollOrListParent((View) view.getParent());
 			}catch(Exception e){
@@ -89,31 +114,300 @@ class ViewFetcher {
 	 */
 
 	public ArrayList<View> getAllViews(boolean onlySufficientlyVisible) {
+		return new ArrayList<View>(getSnapshotViews(getSnapshot(), onlySufficientlyVisible));
+	}
+
+	/**
+	 * Returns the snapshot of the current view tree. The snapshot is shared by all callers
+	 * until the shown DecorViews change, are drawn again or the {@link ViewTreeWatcher}
+	 * reports a change.
+	 *
+	 * @return the snapshot of the current view tree
+	 */
+
+	public ViewTreeSnapshot getSnapshot() {
 		final View[] views = getWindowDecorViews();
-		final ArrayList<View> allViews = new ArrayList<View>();
-		final View[] nonDecorViews = getNonDecorViews(views);
-		View view = null;
-
-		if(nonDecorViews != null){
-			for(int i = 0; i < nonDecorViews.length; i++){
-				view = nonDecorViews[i];
-				try {
-					addChildren(allViews, (ViewGroup)view, onlySufficientlyVisible);
-				} catch (Exception ignored) {}
-				if(view != null) allViews.add(view);
+		final long generation = viewTreeWatcher.getGeneration();
+		ViewTreeSnapshot currentSnapshot = snapshot;
+
+		if(currentSnapshot != null && currentSnapshot.isCurrent(views, generation)){
+			return currentSnapshot;
+		}
+		currentSnapshot = new ViewTreeSnapshot(views, generation);
+		snapshot = currentSnapshot.isReusable() ? currentSnapshot : null;
+		return currentSnapshot;
+	}
+
+	/**
+	 * Returns the hierarchy of the current view tree, captured in one pass on the main thread.
+	 * The hierarchy is shared by all callers for as long as the snapshot of the current view tree.
+	 *
+	 * @param timeout the amount of time in milliseconds to wait for the main thread, limited by the current {@link Deadline}
+	 * @return the hierarchy of the current view tree or {@code null} if the main thread did not capture it in time
+	 */
+
+	public HierarchySnapshot getHierarchySnapshot(long timeout) {
+		final ViewTreeSnapshot viewTreeSnapshot = getSnapshot();
+		HierarchySnapshot hierarchy = viewTreeSnapshot.getHierarchy();
+
+		if(hierarchy == null){
+			hierarchy = captureHierarchy(viewTreeSnapshot.getDecorViews(), timeout);
+			if(hierarchy != null){
+				viewTreeSnapshot.setHierarchy(hierarchy);
+			}
+		}
+		return hierarchy;
+	}
+
+	/**
+	 * Captures the hierarchy of the given DecorViews on the main thread. The windows that are not
+	 * DecorViews come first, followed by the most recent DecorView, as in {@link #getAllViews(boolean)}.
+	 * The capture is posted to the main thread and waited for until the current {@link Deadline},
+	 * and no longer than {@link Config#stallTimeout} if {@link Config#failFast} is true. A capture
+	 * of the same DecorViews that is still pending is waited for instead of posting another one.
+	 *
+	 * @param views the DecorViews
+	 * @param timeout the amount of time in milliseconds to wait for the main thread
+	 * @return the captured hierarchy or {@code null} if it was not captured in time
+	 */
+
+	private HierarchySnapshot captureHierarchy(final View[] views, long timeout) {
+		if(Looper.myLooper() == Looper.getMainLooper()){
+			return HierarchySnapshot.capture(getRootViews(views), this);
+		}
+		FutureTask<HierarchySnapshot> capture;
+
+		synchronized (mainHandler) {
+			capture = pendingCapture;
+
+			if(capture == null || capture.isDone() || !Arrays.equals(pendingCaptureViews, views)){
+				capture = new FutureTask<HierarchySnapshot>(new Callable<HierarchySnapshot>() {
+					public HierarchySnapshot call() {
+						return HierarchySnapshot.capture(getRootViews(views), ViewFetcher.this);
+					}
+				});
+				pendingCapture = capture;
+				pendingCaptureViews = views;
+				mainHandler.post(capture);
+			}
+		}
+		long waitTime = Deadline.getEndTime(timeout) - SystemClock.uptimeMillis();
+
+		if(config.failFast && config.stallTimeout > 0){
+			waitTime = Math.min(waitTime, config.stallTimeout);
+		}
+		try {
+			return capture.get(Math.max(0, waitTime), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the shown view on top at a location, looked up in the bounds index of the current hierarchy.
+	 *
+	 * @param x the x coordinate on the screen
+	 * @param y the y coordinate on the screen
+	 * @param onlyTouchable {@code true} if only clickable, long clickable or focusable views should be returned
+	 * @return the view or {@code null} if there is no view at the location
+	 */
+
+	public View getViewAt(int x, int y, boolean onlyTouchable) {
+		final HierarchySnapshot hierarchy = getHierarchySnapshot(Timeout.getSmallTimeout());
+
+		if(hierarchy == null){
+			return null;
+		}
+		return getView(hierarchy, hierarchy.getBoundsIndex().getViewAt(x, y, onlyTouchable));
+	}
+
+	/**
+	 * Returns the shown views that overlap a region of the screen, in the same order as {@link #getAllViews(boolean)}.
+	 *
+	 * @param left the left edge of the region
+	 * @param top the top edge of the region
+	 * @param right the right edge of the region, exclusive
+	 * @param bottom the bottom edge of the region, exclusive
+	 * @return the views in the region, never {@code null}
+	 */
+
+	public ArrayList<View> getViewsInRegion(int left, int top, int right, int bottom) {
+		final HierarchySnapshot hierarchy = getHierarchySnapshot(Timeout.getSmallTimeout());
+
+		if(hierarchy == null){
+			return new ArrayList<View>();
+		}
+		final int[] indexes = hierarchy.getBoundsIndex().getViewsIn(left, top, right, bottom);
+		final ArrayList<View> views = new ArrayList<View>(indexes.length);
+
+		for(int index : indexes){
+			views.add(hierarchy.getView(index));
+		}
+		return views;
+	}
+
+	/**
+	 * Returns the shown view of a class that is nearest to a location.
+	 *
+	 * @param x the x coordinate on the screen
+	 * @param y the y coordinate on the screen
+	 * @param viewClass the class of the view, subclasses included
+	 * @return the view or {@code null} if there is none
+	 */
+
+	public <T extends View> T getNearestView(int x, int y, Class<T> viewClass) {
+		final HierarchySnapshot hierarchy = getHierarchySnapshot(Timeout.getSmallTimeout());
+
+		if(hierarchy == null){
+			return null;
+		}
+		return viewClass.cast(getView(hierarchy, hierarchy.getBoundsIndex().getNearest(x, y, viewClass)));
+	}
+
+	/**
+	 * Returns the shown view of a class that is nearest to a view in a direction, as decided by
+	 * {@link ViewBoundsIndex#getNearestInDirection(int, int, Class)}.
+	 *
+	 * @param view the view to start from
+	 * @param direction {@link Solo#UP}, {@link Solo#DOWN}, {@link Solo#LEFT} or {@link Solo#RIGHT}
+	 * @param viewClass the class of the view, subclasses included
+	 * @return the view or {@code null} if there is none or the given view is not in the current hierarchy
+	 */
+
+	public <T extends View> T getViewNextTo(View view, int direction, Class<T> viewClass) {
+		final HierarchySnapshot hierarchy = getHierarchySnapshot(Timeout.getSmallTimeout());
+		final int anchor = (hierarchy != null) ? hierarchy.indexOf(view) : -1;
+
+		if(anchor < 0){
+			return null;
+		}
+		return viewClass.cast(getView(hierarchy, hierarchy.getBoundsIndex().getNearestInDirection(anchor, direction, viewClass)));
+	}
+
+	private static View getView(HierarchySnapshot hierarchy, int index) {
+		return (index < 0) ? null : hierarchy.getView(index);
+	}
+
+	/**
+	 * Returns all views with a given id, in the same order as {@link #getAllViews(boolean)}.
+	 * If the views of the current snapshot are collected by this call, the id index built from
+	 * them is used. Since {@code setId()} does not invalidate the view tree, the ids of the views
+	 * of a snapshot that is used again are read again instead, without traversing the view tree.
+	 *
+	 * @param id the id of the views
+	 * @return the views with the given id, never {@code null}
+	 */
+
+	public List<View> getViewsById(int id) {
+		final ViewTreeSnapshot viewTreeSnapshot = getSnapshot();
+		final boolean collected = viewTreeSnapshot.getViews(false) == null;
+		final ArrayList<View> allViews = getSnapshotViews(viewTreeSnapshot, false);
+
+		if(collected){
+			return viewTreeSnapshot.getViewsById(id);
+		}
+		final ArrayList<View> viewsWithId = new ArrayList<View>();
+
+		for(View view : allViews){
+			if(view != null && view.getId() == id){
+				viewsWithId.add(view);
 			}
 		}
+		return viewsWithId;
+	}
+
+	/**
+	 * Returns all views with a given tag, in the same order as {@link #getAllViews(boolean)}.
+	 * If the views of the current snapshot are collected by this call, the tag index built from
+	 * them is used. Since {@code setTag()} does not invalidate the view tree, the tags of the views
+	 * of a snapshot that is used again are read again instead, without traversing the view tree.
+	 *
+	 * @param tag the tag of the views
+	 * @return the views with the given tag, never {@code null}
+	 */
+
+	public List<View> getViewsByTag(Object tag) {
+		final ViewTreeSnapshot viewTreeSnapshot = getSnapshot();
+		final boolean collected = viewTreeSnapshot.getViews(false) == null;
+		final ArrayList<View> allViews = getSnapshotViews(viewTreeSnapshot, false);
+
+		if(collected){
+			return viewTreeSnapshot.getViewsByTag(tag);
+		}
+		final ArrayList<View> viewsWithTag = new ArrayList<View>();
+
+		for(View view : allViews){
+			if(view != null && tag.equals(view.getTag())){
+				viewsWithTag.add(view);
+			}
+		}
+		return viewsWithTag;
+	}
+
+	/**
+	 * Returns the views of a snapshot, collecting them from the view tree the first time.
+	 * The returned list is shared and must not be modified.
+	 *
+	 * @param viewTreeSnapshot the snapshot
+	 * @param onlySufficientlyVisible if only sufficiently visible views should be returned
+	 * @return the views of the snapshot
+	 */
+
+	private ArrayList<View> getSnapshotViews(ViewTreeSnapshot viewTreeSnapshot, boolean onlySufficientlyVisible) {
+		ArrayList<View> views = viewTreeSnapshot.getViews(onlySufficientlyVisible);
+
+		if(views == null){
+			views = collectViews(viewTreeSnapshot.getDecorViews(), onlySufficientlyVisible);
+			viewTreeSnapshot.setViews(onlySufficientlyVisible, views);
+		}
+		return views;
+	}
+
+	/**
+	 * Collects the views of the given DecorViews by traversing the view tree.
+	 *
+	 * @param views the DecorViews
+	 * @param onlySufficientlyVisible if only sufficiently visible views should be returned
+	 * @return all the views contained in the DecorViews
+	 */
 
-		if (views != null && views.length > 0) {
-			view = getRecentDecorView(views);
-			try {
-				addChildren(allViews, (ViewGroup)view, onlySufficientlyVisible);
-			} catch (Exception ignored) {}
+	private ArrayList<View> collectViews(View[] views, boolean onlySufficientlyVisible) {
+		return query().inWindows(views).sufficientlyVisible(onlySufficientlyVisible).list();
+	}
 
-			if(view != null) allViews.add(view);
+	/**
+	 * Returns a new {@link ViewQuery} on the shown views.
+	 *
+	 * @return a new query
+	 */
+
+	public ViewQuery query() {
+		return new ViewQuery(this);
+	}
+
+	/**
+	 * Returns the root views to traverse for the given DecorViews: the windows that are not
+	 * DecorViews, followed by the most recent DecorView.
+	 *
+	 * @param views the DecorViews
+	 * @return the root views, some of which may be {@code null}
+	 */
+
+	View[] getRootViews(View[] views) {
+		if(views == null){
+			return new View[0];
 		}
+		final View[] nonDecorViews = getNonDecorViews(views);
+		final View[] rootViews = new View[nonDecorViews.length + 1];
 
-		return allViews;
+		System.arraycopy(nonDecorViews, 0, rootViews, 0, nonDecorViews.length);
+		rootViews[nonDecorViews.length] = getRecentDecorView(views);
+		return rootViews;
 	}
 
 	/**
@@ -216,49 +510,93 @@ class ViewFetcher {
 	 */
 
 	public ArrayList<View> getViews(View parent, boolean onlySufficientlyVisible) {
-		final ArrayList<View> views = new ArrayList<View>();
-		final View parentToUse;
-
 		if (parent == null){
 			return getAllViews(onlySufficientlyVisible);
-		}else{
-			parentToUse = parent;
+		}
+		return query().under(parent).sufficientlyVisible(onlySufficientlyVisible).list();
+	}
 
-			views.add(parentToUse);
+	/**
+	 * Returns a fingerprint of the shown windows, computed in one pass over the view tree without
+	 * collecting the views. It covers the class, id, visibility, bounds, scroll position, translation,
+	 * alpha and text of each view, so equal fingerprints mean that the screen has most likely not changed.
+	 *
+	 * @return the fingerprint of the shown windows
+	 */
 
-			if (parentToUse instanceof ViewGroup) {
-				addChildren(views, (ViewGroup) parentToUse, onlySufficientlyVisible);
+	public long getFingerprint() {
+		final View[] views = getWindowDecorViews();
+		long fingerprint = FINGERPRINT_SEED;
+
+		if(views != null){
+			for(View view : views){
+				fingerprint = addToFingerprint(fingerprint, view);
 			}
 		}
-		return views;
+		return fingerprint;
 	}
 
 	/**
-	 * Adds all children of {@code viewGroup} (recursively) into {@code views}.
+	 * Adds a view and its children to a fingerprint. The children of views that are not visible are skipped.
 	 *
-	 * @param views an {@code ArrayList} of {@code View}s
-	 * @param viewGroup the {@code ViewGroup} to extract children from
-	 * @param onlySufficientlyVisible if only sufficiently visible views should be returned
+	 * @param fingerprint the fingerprint so far
+	 * @param view the view to add
+	 * @return the new fingerprint
 	 */
 
-	private void addChildren(ArrayList<View> views, ViewGroup viewGroup, boolean onlySufficientlyVisible) {
-		if(viewGroup != null){
-			for (int i = 0; i < viewGroup.getChildCount(); i++) {
-				final View child = viewGroup.getChildAt(i);
+	private long addToFingerprint(long fingerprint, View view) {
+		if(view == null){
+			return mix(fingerprint, 0);
+		}
+		final int visibility = view.getVisibility();
 
-				if(onlySufficientlyVisible && isViewSufficientlyShown(child)) {
-					views.add(child);
-				}
+		fingerprint = mix(fingerprint, view.getClass().hashCode());
+		fingerprint = mix(fingerprint, view.getId());
+		fingerprint = mix(fingerprint, visibility);
 
-				else if(!onlySufficientlyVisible && child != null) {
-					views.add(child);
-				}
+		if(visibility != View.VISIBLE){
+			return fingerprint;
+		}
+		fingerprint = mix(fingerprint, view.getLeft());
+		fingerprint = mix(fingerprint, view.getTop());
+		fingerprint = mix(fingerprint, view.getRight());
+		fingerprint = mix(fingerprint, view.getBottom());
+		fingerprint = mix(fingerprint, view.getScrollX());
+		fingerprint = mix(fingerprint, view.getScrollY());
+
+		if (android.os.Build.VERSION.SDK_INT >= 11) {
+			fingerprint = mix(fingerprint, Float.floatToIntBits(view.getTranslationX()));
+			fingerprint = mix(fingerprint, Float.floatToIntBits(view.getTranslationY()));
+			fingerprint = mix(fingerprint, Float.floatToIntBits(view.getAlpha()));
+		}
 
-				if (child instanceof ViewGroup) {
-					addChildren(views, (ViewGroup) child, onlySufficientlyVisible);
-				}
+		if(view instanceof TextView){
+			final CharSequence text = ((TextView) view).getText();
+			fingerprint = mix(fingerprint, text != null ? text.toString().hashCode() : 0);
+		}
+
+		if(view instanceof ViewGroup){
+			final ViewGroup viewGroup = (ViewGroup) view;
+			final int childCount = viewGroup.getChildCount();
+
+			fingerprint = mix(fingerprint, childCount);
+			for(int i = 0; i < childCount; i++){
+				fingerprint = addToFingerprint(fingerprint, viewGroup.getChildAt(i));
 			}
 		}
+		return fingerprint;
+	}
+
+	/**
+	 * Mixes a value into a fingerprint, FNV-1a style.
+	 *
+	 * @param fingerprint the fingerprint so far
+	 * @param value the value to mix in
+	 * @return the new fingerprint
+	 */
+
+	private static long mix(long fingerprint, int value) {
+		return (fingerprint ^ value) * FINGERPRINT_PRIME;
 	}
 
 	/**
@@ -269,27 +607,31 @@ class ViewFetcher {
 	 */
 
 	public final boolean isViewSufficientlyShown(View view){
-		final int[] xyView = new int[2];
-		final int[] xyParent = new int[2];
-
 		if(view == null)
 			return false;
 
-		final float viewHeight = view.getHeight();
+		final int[] xy = new int[2];
 		final View parent = getScrollOrListParent(view);
-		view.getLocationOnScreen(xyView);
+		view.getLocationOnScreen(xy);
+
+		final float center = xy[1] + (view.getHeight()/2.0f);
+		final float parentTop;
+		final float windowHeight;
 
 		if(parent == null){
-			xyParent[1] = 0;
+			parentTop = 0;
+			windowHeight = getDisplayHeight();
 		}
 		else{
-			parent.getLocationOnScreen(xyParent);
+			parent.getLocationOnScreen(xy);
+			parentTop = xy[1];
+			windowHeight = xy[1] + parent.getHeight();
 		}
 
-		if(xyView[1] + (viewHeight/2.0f) > getScrollListWindowHeight(view))
+		if(center > windowHeight)
 			return false;
 
-		else if(xyView[1] + (viewHeight/2.0f) < xyParent[1])
+		else if(center < parentTop)
 			return false;
 
 		return true;
@@ -301,17 +643,13 @@ class ViewFetcher {
 	 * @return the height of the scroll or list view parent
 	 */
 
-	@SuppressWarnings("deprecation")
 	public float getScrollListWindowHeight(View view) {
 		final int[] xyParent = new int[2];
 		View parent = getScrollOrListParent(view);
 		final float windowHeight;
 
 		if(parent == null){
-			WindowManager windowManager = (WindowManager) 
-					instrumentation.getTargetContext().getSystemService(Context.WINDOW_SERVICE);
-
-			windowHeight = windowManager.getDefaultDisplay().getHeight();
+			windowHeight = getDisplayHeight();
 		}
 
 		else{
@@ -323,6 +661,27 @@ class ViewFetcher {
 	}
 
 
+	/**
+	 * Returns the height of the display. The height is looked up again only when the configuration
+	 * of the application under test has changed, e.g. after a rotation.
+	 *
+	 * @return the height of the display in pixels
+	 */
+
+	@SuppressWarnings("deprecation")
+	synchronized int getDisplayHeight() {
+		final Configuration configuration = instrumentation.getTargetContext().getResources().getConfiguration();
+
+		if(displayConfiguration == null || !displayConfiguration.equals(configuration)){
+			WindowManager windowManagerService = (WindowManager)
+					instrumentation.getTargetContext().getSystemService(Context.WINDOW_SERVICE);
+
+			displayHeight = windowManagerService.getDefaultDisplay().getHeight();
+			displayConfiguration = new Configuration(configuration);
+		}
+		return displayHeight;
+	}
+
 	/**
 	 * Returns an {@code ArrayList} of {@code View}s of the specified {@code Class} located in the current
 	 * {@code Activity}.
@@ -346,8 +705,30 @@ class ViewFetcher {
 	 */
 
 	public <T extends View> ArrayList<T> getCurrentViews(Class<T> classToFilterBy, boolean includeSubclasses, View parent) {
+		if(parent == null){
+			final ViewTreeSnapshot viewTreeSnapshot = getSnapshot();
+			ArrayList<T> filteredViews = viewTreeSnapshot.getViews(classToFilterBy, includeSubclasses);
+
+			if(filteredViews == null){
+				filteredViews = filterViews(classToFilterBy, includeSubclasses, getSnapshotViews(viewTreeSnapshot, true));
+				viewTreeSnapshot.setViews(classToFilterBy, includeSubclasses, filteredViews);
+			}
+			return new ArrayList<T>(filteredViews);
+		}
+		return filterViews(classToFilterBy, includeSubclasses, getViews(parent, true));
+	}
+
+	/**
+	 * Filters views by class.
+	 *
+	 * @param classToFilterBy the class to filter by
+	 * @param includeSubclasses include instances of subclasses
+	 * @param allViews the views to filter
+	 * @return the views of the specified class
+	 */
+
+	private <T extends View> ArrayList<T> filterViews(Class<T> classToFilterBy, boolean includeSubclasses, List<View> allViews) {
 		ArrayList<T> filteredViews = new ArrayList<T>();
-		List<View> allViews = getViews(parent, true);
 		for(View view : allViews){
 			if (view == null) {
 				continue;
@@ -415,7 +796,7 @@ class ViewFetcher {
 
 
 	public <T extends View> ViewGroup getRecyclerView(int recyclerViewIndex, int timeOut) {
-		final long endTime = SystemClock.uptimeMillis() + timeOut;
+		final long endTime = Deadline.getEndTime(timeOut);
 
 		while (SystemClock.uptimeMillis() < endTime) {
 			View recyclerView = getRecyclerView(true, recyclerViewIndex);
@@ -436,26 +817,11 @@ class ViewFetcher {
 	 */
 
 	public View getRecyclerView(boolean shouldSleep, int recyclerViewIndex){
-		Set<View> uniqueViews = new HashSet<View>();
 		if(shouldSleep){
 			sleeper.sleep();
 		}
 
-		@SuppressWarnings("unchecked")
-		ArrayList<View> views = RobotiumUtils.filterViewsToSet(new Class[] {ViewGroup.class}, getAllViews(false));
-		views = RobotiumUtils.removeInvisibleViews(views);
-
-		for(View view : views){
-
-			if(isViewType(view.getClass(), "widget.RecyclerView")){
-				uniqueViews.add(view);
-			}
-
-			if(uniqueViews.size() > recyclerViewIndex) {
-				return (ViewGroup) view;
-			}
-		}
-		return null;
+		return query().ofType("widget.RecyclerView").shown().get(recyclerViewIndex);
 	}
 
 	/**
@@ -466,36 +832,11 @@ class ViewFetcher {
 	 */
 
 	public List<View> getScrollableSupportPackageViews(boolean shouldSleep){
-		List <View> viewsToReturn = new ArrayList<View>();
 		if(shouldSleep){
 			sleeper.sleep();
 		}
 
-		@SuppressWarnings("unchecked")
-		ArrayList<View> views = RobotiumUtils.filterViewsToSet(new Class[] {ViewGroup.class}, getAllViews(true));
-		views = RobotiumUtils.removeInvisibleViews(views);
-
-		for(View view : views){
-
-			if(isViewType(view.getClass(), "widget.RecyclerView") || 
-					isViewType(view.getClass(), "widget.NestedScrollView")){
-				viewsToReturn.add(view);
-			}
-
-		}
-		return viewsToReturn;
-	}
-
-	private boolean isViewType(Class<?> aClass, String typeName) {
-		if (aClass.getName().contains(typeName)) {
-			return true;
-		}
-
-		if (aClass.getSuperclass() != null) {
-			return isViewType(aClass.getSuperclass(), typeName);
-		}
-
-		return false;
+		return query().ofType("widget.RecyclerView", "widget.NestedScrollView").shown().sufficientlyVisible().list();
 	}
 
 	/**
@@ -573,13 +914,13 @@ class ViewFetcher {
 	public View[] getWindowDecorViews()
 	{
 
-		Field viewsField;
-		Field instanceField;
 		try {
-			viewsField = windowManager.getDeclaredField("mViews");
-			instanceField = windowManager.getDeclaredField(windowManagerString);
-			viewsField.setAccessible(true);
-			instanceField.setAccessible(true);
+			if(viewsField == null || instanceField == null){
+				viewsField = windowManager.getDeclaredField("mViews");
+				instanceField = windowManager.getDeclaredField(windowManagerString);
+				viewsField.setAccessible(true);
+				instanceField.setAccessible(true);
+			}
 			Object instance = instanceField.get(null);
 			View[] result;
 			if (android.os.Build.VERSION.SDK_INT >= 19) {
@@ -1,7 +1,10 @@
 package com.robotium.solo;
 
 import android.view.View;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
 
 /**
  * Orders {@link View}s by their location on-screen.
@@ -27,6 +30,41 @@ class ViewLocationComparator implements Comparator<View> {
 		this.axis2 = yAxisFirst ? 0 : 1;
 	}
 
+	/**
+	 * Sorts views in the order of this comparator. The location of each view is read once
+	 * and kept as its sort key, instead of twice in every comparison.
+	 *
+	 * @param views the views to sort
+	 */
+
+	@SuppressWarnings("unchecked")
+	public void sort(List<? extends View> views) {
+		final LocatedView[] locatedViews = new LocatedView[views.size()];
+		int i = 0;
+
+		for (View view : views) {
+			view.getLocationOnScreen(a);
+			locatedViews[i++] = new LocatedView(view, a[axis1], a[axis2]);
+		}
+		Arrays.sort(locatedViews, new Comparator<LocatedView>() {
+			public int compare(LocatedView lhs, LocatedView rhs) {
+				if (lhs.key1 != rhs.key1) {
+					return lhs.key1 < rhs.key1 ? -1 : 1;
+				}
+				if (lhs.key2 < rhs.key2) {
+					return -1;
+				}
+				return lhs.key2 == rhs.key2 ? 0 : 1;
+			}
+		});
+
+		final ListIterator<View> iterator = (ListIterator<View>) views.listIterator();
+		for (LocatedView locatedView : locatedViews) {
+			iterator.next();
+			iterator.set(locatedView.view);
+		}
+	}
+
 	public int compare(View lhs, View rhs) {
 		lhs.getLocationOnScreen(a);
 		rhs.getLocationOnScreen(b);
@@ -39,4 +77,20 @@ class ViewLocationComparator implements Comparator<View> {
 		}
 		return a[axis2] == b[axis2] ? 0 : 1;
 	}
+
+	/**
+	 * A view with its location on the sorted axes.
+	 */
+
+	private static final class LocatedView {
+		final View view;
+		final int key1;
+		final int key2;
+
+		LocatedView(View view, int key1, int key2) {
+			this.view = view;
+			this.key1 = key1;
+			this.key2 = key2;
+		}
+	}
 }
@@ -0,0 +1,456 @@
+package com.robotium.solo;
+
+import java.util.ArrayList;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+
+/**
+ * A lazily evaluated query for views. The filters are set with the fluent methods and are applied
+ * during the traversal of the view tree, so that no intermediate lists are created. The traversal
+ * stops as soon as the requested view has been found.
+ * <br><br>
+ * Example of usage:
+ * <pre>
+ *  View button = viewFetcher.query().ofClass(Button.class).shown().sufficientlyVisible().get(0);
+ * </pre>
+ * Views are visited in the same order as {@link ViewFetcher#getAllViews(boolean)} and
+ * {@link ViewFetcher#getViews(View, boolean)} return them.
+ */
+
+final class ViewQuery {
+
+	private final ViewFetcher viewFetcher;
+	private View[] decorViews;
+	private View parent;
+	private Class<?>[] classes;
+	private String[] typeNames;
+	private boolean filterById = false;
+	private int id;
+	private Object tag;
+	private String regex;
+	private boolean onlyShown = false;
+	private boolean onlySufficientlyVisible = false;
+
+
+	/**
+	 * Constructs this object. Queries are created with {@link ViewFetcher#query()}.
+	 *
+	 * @param viewFetcher the {@code ViewFetcher} instance
+	 */
+
+	ViewQuery(ViewFetcher viewFetcher) {
+		this.viewFetcher = viewFetcher;
+	}
+
+	/**
+	 * Queries the views of the given DecorViews instead of the shown ones.
+	 *
+	 * @param decorViews the DecorViews to query
+	 * @return this query
+	 */
+
+	public ViewQuery inWindows(View[] decorViews) {
+		this.decorViews = decorViews;
+		return this;
+	}
+
+	/**
+	 * Queries the given view and the views it contains instead of all views.
+	 *
+	 * @param parent the view to start from
+	 * @return this query
+	 */
+
+	public ViewQuery under(View parent) {
+		this.parent = parent;
+		return this;
+	}
+
+	/**
+	 * Only matches views that are instances of one of the given classes, or of one of the types given to {@link #ofType(String...)}.
+	 *
+	 * @param classes the classes to match, subclasses included
+	 * @return this query
+	 */
+
+	public ViewQuery ofClass(Class<?>... classes) {
+		this.classes = classes;
+		return this;
+	}
+
+	/**
+	 * Only matches views whose class, or one of its superclasses, has a name that contains one of the given type names,
+	 * or views that are instances of one of the classes given to {@link #ofClass(Class...)}. Used for classes that
+	 * Robotium does not depend on, e.g. {@code "widget.RecyclerView"}.
+	 *
+	 * @param typeNames the type names to match
+	 * @return this query
+	 */
+
+	public ViewQuery ofType(String... typeNames) {
+		this.typeNames = typeNames;
+		return this;
+	}
+
+	/**
+	 * Only matches views with the given id.
+	 *
+	 * @param id the id to match
+	 * @return this query
+	 */
+
+	public ViewQuery withId(int id) {
+		this.filterById = true;
+		this.id = id;
+		return this;
+	}
+
+	/**
+	 * Only matches views with the given tag.
+	 *
+	 * @param tag the tag to match
+	 * @return this query
+	 */
+
+	public ViewQuery withTag(Object tag) {
+		this.tag = tag;
+		return this;
+	}
+
+	/**
+	 * Only matches text views with a text, error or hint that matches the given regex.
+	 *
+	 * @param regex the text to match. The parameter will be interpreted as a regular expression
+	 * @return this query
+	 */
+
+	public ViewQuery withText(String regex) {
+		this.regex = regex;
+		return this;
+	}
+
+	/**
+	 * Only matches views that are shown, as given by {@code View.isShown()}.
+	 *
+	 * @return this query
+	 */
+
+	public ViewQuery shown() {
+		this.onlyShown = true;
+		return this;
+	}
+
+	/**
+	 * Only visits views that are sufficiently visible, as decided by {@link ViewFetcher#isViewSufficientlyShown(View)}.
+	 * The DecorViews and the parent given to {@link #under(View)} are always visited.
+	 *
+	 * @return this query
+	 */
+
+	public ViewQuery sufficientlyVisible() {
+		return sufficientlyVisible(true);
+	}
+
+	/**
+	 * Sets whether only sufficiently visible views are visited.
+	 *
+	 * @param onlySufficientlyVisible {@code true} if only sufficiently visible views should be visited
+	 * @return this query
+	 */
+
+	public ViewQuery sufficientlyVisible(boolean onlySufficientlyVisible) {
+		this.onlySufficientlyVisible = onlySufficientlyVisible;
+		return this;
+	}
+
+	/**
+	 * Returns the first matching view.
+	 *
+	 * @return the first matching view or {@code null} if there is none
+	 */
+
+	public View first() {
+		return get(0);
+	}
+
+	/**
+	 * Returns the matching view at the given index. The traversal stops at that view.
+	 *
+	 * @param index the index of the view among the matching views
+	 * @return the matching view or {@code null} if there are not that many
+	 */
+
+	public View get(final int index) {
+		final View[] result = new View[1];
+
+		walk(new Collector() {
+			int matches = 0;
+
+			boolean add(View view) {
+				if(matches++ == index){
+					result[0] = view;
+					return false;
+				}
+				return true;
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Returns all matching views.
+	 *
+	 * @return the matching views, never {@code null}
+	 */
+
+	public ArrayList<View> list() {
+		return list(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the first matching views. The traversal stops when the limit is reached.
+	 *
+	 * @param limit the maximum number of views to return
+	 * @return the matching views, never {@code null}
+	 */
+
+	public ArrayList<View> list(final int limit) {
+		final ArrayList<View> views = new ArrayList<View>();
+
+		if(limit <= 0){
+			return views;
+		}
+		walk(new Collector() {
+			boolean add(View view) {
+				views.add(view);
+				return views.size() < limit;
+			}
+		});
+		return views;
+	}
+
+	/**
+	 * Returns all matching views, those that are instances of the classes given to {@link #ofClass(Class...)}
+	 * first and then those that are only of the types given to {@link #ofType(String...)}. Both parts are
+	 * in traversal order and are collected in the same traversal.
+	 *
+	 * @return the matching views, never {@code null}
+	 */
+
+	public ArrayList<View> listByKind() {
+		final ArrayList<View> views = new ArrayList<View>();
+		final ArrayList<View> typeViews = new ArrayList<View>();
+
+		walk(new Collector() {
+			boolean add(View view) {
+				if(classes != null && isOfClass(view.getClass())){
+					views.add(view);
+				}
+				else {
+					typeViews.add(view);
+				}
+				return true;
+			}
+		});
+		views.addAll(typeViews);
+		return views;
+	}
+
+	/**
+	 * Returns true if a view passes all filters.
+	 *
+	 * @param view the view to check
+	 * @return true if the view passes all filters
+	 */
+
+	private boolean matches(View view) {
+		if(filterById && view.getId() != id){
+			return false;
+		}
+		if(tag != null && !tag.equals(view.getTag())){
+			return false;
+		}
+		if((classes != null || typeNames != null) && !isOfKind(view)){
+			return false;
+		}
+		if(regex != null && !(view instanceof TextView && RobotiumUtils.isTextMatching(regex, (TextView) view))){
+			return false;
+		}
+		if(onlyShown && !view.isShown()){
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if a view is of one of the classes or types to match.
+	 *
+	 * @param view the view to check
+	 * @return true if the view is of one of the classes or types to match
+	 */
+
+	private boolean isOfKind(View view) {
+		final Class<?> viewClass = view.getClass();
+
+		if(classes != null && isOfClass(viewClass)){
+			return true;
+		}
+		if(typeNames != null){
+			for(String typeName : typeNames){
+				if(ViewTypes.isViewType(viewClass, typeName)){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if a view class is one of the classes to match or a subclass of one of them.
+	 *
+	 * @param viewClass the view class to check
+	 * @return true if the view class is one of the classes to match or a subclass of one of them
+	 */
+
+	private boolean isOfClass(Class<?> viewClass) {
+		for(Class<?> classToMatch : classes){
+			if(classToMatch.isAssignableFrom(viewClass)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Visits the views and passes the matching ones to the collector until it asks to stop.
+	 *
+	 * @param collector the collector of the matching views
+	 */
+
+	private void walk(Collector collector) {
+		if(parent != null){
+			if(matches(parent) && !collector.add(parent)){
+				return;
+			}
+			if(parent instanceof ViewGroup){
+				walkFrom((ViewGroup) parent, collector);
+			}
+			return;
+		}
+
+		final View[] views = (decorViews != null) ? decorViews : viewFetcher.getWindowDecorViews();
+
+		for(View rootView : viewFetcher.getRootViews(views)){
+			if(rootView == null){
+				continue;
+			}
+			if(rootView instanceof ViewGroup && !walkFrom((ViewGroup) rootView, collector)){
+				return;
+			}
+			if(matches(rootView) && !collector.add(rootView)){
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Visits the views contained in a view group, starting with the screen position and the clip
+	 * of the nearest scroll or list view of the view group.
+	 *
+	 * @param viewGroup the view group to start from
+	 * @param collector the collector of the matching views
+	 * @return false if the collector asked to stop
+	 */
+
+	private boolean walkFrom(ViewGroup viewGroup, Collector collector) {
+		if(!onlySufficientlyVisible){
+			return walkChildren(viewGroup, 0, 0, 0, collector);
+		}
+		final int[] xy = new int[2];
+		final View scrollOrListParent = viewFetcher.getScrollOrListParent(viewGroup);
+		int clipTop = 0;
+		int clipBottom = viewFetcher.getDisplayHeight();
+
+		if(scrollOrListParent != null){
+			scrollOrListParent.getLocationOnScreen(xy);
+			clipTop = xy[1];
+			clipBottom = xy[1] + scrollOrListParent.getHeight();
+		}
+		viewGroup.getLocationOnScreen(xy);
+		return walkChildren(viewGroup, xy[1], clipTop, clipBottom, collector);
+	}
+
+	/**
+	 * Visits the views contained in a view group, recursively. If only sufficiently visible views are
+	 * visited, the screen position and the clip of the nearest scroll or list view are carried down the
+	 * recursion, so each view is checked in constant time with the same rule as
+	 * {@link ViewFetcher#isViewSufficientlyShown(View)}. The children of a view that is not sufficiently
+	 * visible are still visited.
+	 *
+	 * @param viewGroup the view group to visit the children of
+	 * @param groupY the y coordinate of {@code viewGroup} on the screen
+	 * @param clipTop the top of the nearest scroll or list view on the screen, or 0 if there is none
+	 * @param clipBottom the bottom of the nearest scroll or list view on the screen, or the display height if there is none
+	 * @param collector the collector of the matching views
+	 * @return false if the collector asked to stop
+	 */
+
+	private boolean walkChildren(ViewGroup viewGroup, int groupY, int clipTop, int clipBottom, Collector collector) {
+		final int childOffset = groupY - viewGroup.getScrollY();
+
+		for (int i = 0; i < viewGroup.getChildCount(); i++) {
+			final View child = viewGroup.getChildAt(i);
+
+			if(child == null) {
+				continue;
+			}
+			int childY = 0;
+			int childClipTop = clipTop;
+			int childClipBottom = clipBottom;
+			boolean visible = true;
+
+			if(onlySufficientlyVisible){
+				childY = childOffset + child.getTop();
+
+				if (android.os.Build.VERSION.SDK_INT >= 11) {
+					childY += (int) (child.getTranslationY() + 0.5f);
+				}
+				final int childHeight = child.getHeight();
+
+				if(ViewTypes.is(child, ViewTypes.SCROLL_OR_LIST_VIEW)) {
+					childClipTop = childY;
+					childClipBottom = childY + childHeight;
+				}
+				final float center = childY + (childHeight/2.0f);
+				visible = center <= childClipBottom && center >= childClipTop;
+			}
+
+			if(visible && matches(child) && !collector.add(child)) {
+				return false;
+			}
+
+			if (child instanceof ViewGroup && !walkChildren((ViewGroup) child, childY, childClipTop, childClipBottom, collector)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Receives the matching views of a traversal.
+	 */
+
+	private abstract static class Collector {
+
+		/**
+		 * Receives a matching view.
+		 *
+		 * @param view the matching view
+		 * @return true if the traversal should go on
+		 */
+
+		abstract boolean add(View view);
+	}
+}
@@ -0,0 +1,269 @@
+package com.robotium.solo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import android.util.SparseArray;
+import android.view.View;
+
+
+/**
+ * Holds the views collected from one generation of the shown windows. A snapshot stays
+ * valid as long as the same DecorViews are shown, they have not been drawn again and the
+ * {@link ViewTreeWatcher} has not seen a change. Used by {@link ViewFetcher} so that repeated
+ * queries on an unchanged screen do not need to traverse the view tree again.
+ */
+
+class ViewTreeSnapshot {
+
+	private final View[] decorViews;
+	private final long[] drawingTimes;
+	private final long generation;
+	private ArrayList<View> allViews;
+	private ArrayList<View> sufficientlyVisibleViews;
+	private final Map<Class<?>, ArrayList<? extends View>> viewsByClass;
+	private final Map<Class<?>, ArrayList<? extends View>> viewsBySubclass;
+	private SparseArray<ArrayList<View>> viewsById;
+	private Map<Object, ArrayList<View>> viewsByTag;
+	private HierarchySnapshot hierarchy;
+
+
+	/**
+	 * Constructs this object.
+	 *
+	 * @param decorViews the DecorViews shown when the snapshot is taken
+	 * @param generation the {@link ViewTreeWatcher} generation when the snapshot is taken
+	 */
+
+	public ViewTreeSnapshot(View[] decorViews, long generation) {
+		this.decorViews = decorViews;
+		this.generation = generation;
+		this.drawingTimes = getDrawingTimes(decorViews);
+		viewsByClass = new HashMap<Class<?>, ArrayList<? extends View>>();
+		viewsBySubclass = new HashMap<Class<?>, ArrayList<? extends View>>();
+	}
+
+	/**
+	 * Returns true if the snapshot still represents the shown windows.
+	 *
+	 * @param currentDecorViews the DecorViews that are shown now
+	 * @param currentGeneration the current {@link ViewTreeWatcher} generation
+	 * @return true if the snapshot can be used
+	 */
+
+	public boolean isCurrent(View[] currentDecorViews, long currentGeneration) {
+		if(decorViews == null || currentDecorViews == null || generation != currentGeneration
+				|| decorViews.length != currentDecorViews.length){
+			return false;
+		}
+
+		for(int i = 0; i < decorViews.length; i++){
+			final View view = currentDecorViews[i];
+
+			if(view != decorViews[i]){
+				return false;
+			}
+
+			if(view != null && (view.getDrawingTime() != drawingTimes[i] || view.isLayoutRequested())){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the snapshot may be kept for the following queries. A snapshot taken
+	 * while a layout is pending is only used once.
+	 *
+	 * @return true if the snapshot may be kept
+	 */
+
+	public boolean isReusable() {
+		if(decorViews == null){
+			return false;
+		}
+
+		for(View view : decorViews){
+			if(view != null && view.isLayoutRequested()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the DecorViews of the snapshot.
+	 *
+	 * @return the DecorViews of the snapshot
+	 */
+
+	public View[] getDecorViews() {
+		return decorViews;
+	}
+
+	/**
+	 * Returns the collected views or {@code null} if they have not been collected yet.
+	 *
+	 * @param onlySufficientlyVisible if only sufficiently visible views should be returned
+	 * @return the collected views or {@code null}
+	 */
+
+	public synchronized ArrayList<View> getViews(boolean onlySufficientlyVisible) {
+		return onlySufficientlyVisible ? sufficientlyVisibleViews : allViews;
+	}
+
+	/**
+	 * Stores the collected views.
+	 *
+	 * @param onlySufficientlyVisible if the views are only the sufficiently visible ones
+	 * @param views the collected views
+	 */
+
+	public synchronized void setViews(boolean onlySufficientlyVisible, ArrayList<View> views) {
+		if(onlySufficientlyVisible){
+			sufficientlyVisibleViews = views;
+		}
+		else{
+			allViews = views;
+		}
+	}
+
+	/**
+	 * Returns the sufficiently visible views of a given class or {@code null} if they have not been filtered yet.
+	 *
+	 * @param classToFilterBy the class to filter by
+	 * @param includeSubclasses if instances of subclasses are included
+	 * @return the filtered views or {@code null}
+	 */
+
+	@SuppressWarnings("unchecked")
+	public synchronized <T extends View> ArrayList<T> getViews(Class<T> classToFilterBy, boolean includeSubclasses) {
+		return (ArrayList<T>) (includeSubclasses ? viewsBySubclass : viewsByClass).get(classToFilterBy);
+	}
+
+	/**
+	 * Stores the sufficiently visible views of a given class.
+	 *
+	 * @param classToFilterBy the class the views are filtered by
+	 * @param includeSubclasses if instances of subclasses are included
+	 * @param views the filtered views
+	 */
+
+	public synchronized <T extends View> void setViews(Class<T> classToFilterBy, boolean includeSubclasses, ArrayList<T> views) {
+		(includeSubclasses ? viewsBySubclass : viewsByClass).put(classToFilterBy, views);
+	}
+
+	/**
+	 * Returns the captured hierarchy or {@code null} if it has not been captured yet.
+	 *
+	 * @return the captured hierarchy or {@code null}
+	 */
+
+	public synchronized HierarchySnapshot getHierarchy() {
+		return hierarchy;
+	}
+
+	/**
+	 * Stores the captured hierarchy.
+	 *
+	 * @param hierarchy the captured hierarchy
+	 */
+
+	public synchronized void setHierarchy(HierarchySnapshot hierarchy) {
+		this.hierarchy = hierarchy;
+	}
+
+	/**
+	 * Returns the views that had a given id when the index was built, in traversal order. Requires that all views
+	 * have been stored with {@link #setViews(boolean, ArrayList)}. The returned list must not be modified.
+	 *
+	 * @param id the id of the views
+	 * @return the views with the given id or an empty list
+	 */
+
+	public synchronized List<View> getViewsById(int id) {
+		if(viewsById == null){
+			buildIndex();
+		}
+		final List<View> views = viewsById.get(id);
+		return views != null ? views : Collections.<View>emptyList();
+	}
+
+	/**
+	 * Returns the views that had a given tag when the index was built, in traversal order. Requires that all views
+	 * have been stored with {@link #setViews(boolean, ArrayList)}. The returned list must not be modified.
+	 *
+	 * @param tag the tag of the views
+	 * @return the views with the given tag or an empty list
+	 */
+
+	public synchronized List<View> getViewsByTag(Object tag) {
+		if(viewsByTag == null){
+			buildIndex();
+		}
+		final List<View> views = viewsByTag.get(tag);
+		return views != null ? views : Collections.<View>emptyList();
+	}
+
+	/**
+	 * Builds the id and tag index over all views in one pass.
+	 */
+
+	private void buildIndex() {
+		viewsById = new SparseArray<ArrayList<View>>();
+		viewsByTag = new HashMap<Object, ArrayList<View>>();
+
+		if(allViews == null){
+			return;
+		}
+
+		for(View view : allViews){
+			if(view == null){
+				continue;
+			}
+			final int id = view.getId();
+			ArrayList<View> views = viewsById.get(id);
+
+			if(views == null){
+				views = new ArrayList<View>(1);
+				viewsById.put(id, views);
+			}
+			views.add(view);
+
+			final Object tag = view.getTag();
+
+			if(tag != null){
+				views = viewsByTag.get(tag);
+
+				if(views == null){
+					views = new ArrayList<View>(1);
+					viewsByTag.put(tag, views);
+				}
+				views.add(view);
+			}
+		}
+	}
+
+	/**
+	 * Returns the drawing times of the given views.
+	 *
+	 * @param views the views
+	 * @return the drawing times
+	 */
+
+	private long[] getDrawingTimes(View[] views) {
+		if(views == null){
+			return null;
+		}
+		final long[] times = new long[views.length];
+
+		for(int i = 0; i < views.length; i++){
+			if(views[i] != null){
+				times[i] = views[i].getDrawingTime();
+			}
+		}
+		return times;
+	}
+}
@@ -0,0 +1,225 @@
+package com.robotium.solo;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+
+/**
+ * Keeps track of changes in the view hierarchy by listening to the {@code ViewTreeObserver}s
+ * of the shown windows. Every layout, draw, focus or scroll change increases a generation
+ * counter which can be waited upon. Changes other than draws also increase a layout generation.
+ */
+
+class ViewTreeWatcher {
+
+	/**
+	 * Generation that never matches the current one. Waiting with it returns immediately.
+	 */
+	public static final long NO_GENERATION = -1;
+
+	private final Object generationLock = new Object();
+	private final Map<ViewTreeObserver, Boolean> observedTrees;
+	private final TreeListener treeListener;
+	private long generation = 0;
+	private long layoutGeneration = 0;
+
+
+	/**
+	 * Constructs this object.
+	 */
+
+	public ViewTreeWatcher() {
+		observedTrees = new WeakHashMap<ViewTreeObserver, Boolean>();
+		treeListener = new TreeListener();
+	}
+
+	/**
+	 * Starts listening to the view trees of the given views. Trees that are already
+	 * observed are ignored. The listeners are added on the main thread.
+	 *
+	 * @param views the views whose trees should be observed, usually the window DecorViews
+	 */
+
+	public void observe(View[] views) {
+		if(views == null){
+			return;
+		}
+
+		for(View view : views){
+			if(view == null){
+				continue;
+			}
+			final ViewTreeObserver viewTreeObserver = view.getViewTreeObserver();
+
+			synchronized (observedTrees) {
+				if(observedTrees.containsKey(viewTreeObserver)){
+					continue;
+				}
+				observedTrees.put(viewTreeObserver, Boolean.TRUE);
+			}
+
+			view.post(new Runnable() {
+				public void run() {
+					addListeners(viewTreeObserver);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stops listening to all observed view trees.
+	 */
+
+	public void stopObserving() {
+		final ArrayList<ViewTreeObserver> viewTreeObservers;
+
+		synchronized (observedTrees) {
+			viewTreeObservers = new ArrayList<ViewTreeObserver>(observedTrees.keySet());
+			observedTrees.clear();
+		}
+
+		for(ViewTreeObserver viewTreeObserver : viewTreeObservers){
+			removeListeners(viewTreeObserver);
+		}
+	}
+
+	/**
+	 * Returns the current generation of the observed view trees.
+	 *
+	 * @return the current generation
+	 */
+
+	public long getGeneration() {
+		synchronized (generationLock) {
+			return generation;
+		}
+	}
+
+	/**
+	 * Returns the current layout generation of the observed view trees. Unlike
+	 * {@link #getGeneration()} it does not change when a view is only redrawn, e.g. by an animation.
+	 *
+	 * @return the current layout generation
+	 */
+
+	public long getLayoutGeneration() {
+		synchronized (generationLock) {
+			return layoutGeneration;
+		}
+	}
+
+	/**
+	 * Waits until the observed view trees have changed since the given generation.
+	 * Returns immediately if a change has already happened.
+	 *
+	 * @param lastGeneration the generation that was seen last
+	 * @param timeout the maximum amount of time in milliseconds to wait
+	 * @return the current generation
+	 */
+
+	public long waitForChange(long lastGeneration, int timeout) {
+		final long endTime = SystemClock.uptimeMillis() + timeout;
+
+		synchronized (generationLock) {
+			long timeLeft = timeout;
+
+			while (generation == lastGeneration && timeLeft > 0) {
+				try {
+					generationLock.wait(timeLeft);
+				} catch (InterruptedException e) {
+					break;
+				}
+				timeLeft = endTime - SystemClock.uptimeMillis();
+			}
+			return generation;
+		}
+	}
+
+	/**
+	 * Increases the generation and wakes up the waiting threads.
+	 *
+	 * @param layoutChanged {@code true} if the layout generation should be increased as well
+	 */
+
+	private void onTreeChanged(boolean layoutChanged) {
+		synchronized (generationLock) {
+			generation++;
+			if(layoutChanged){
+				layoutGeneration++;
+			}
+			generationLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Adds the tree listener to a {@code ViewTreeObserver}.
+	 *
+	 * @param viewTreeObserver the {@code ViewTreeObserver} to add the listener to
+	 */
+
+	private void addListeners(ViewTreeObserver viewTreeObserver) {
+		try{
+			if(viewTreeObserver.isAlive()){
+				viewTreeObserver.addOnGlobalLayoutListener(treeListener);
+				viewTreeObserver.addOnPreDrawListener(treeListener);
+				viewTreeObserver.addOnGlobalFocusChangeListener(treeListener);
+				viewTreeObserver.addOnScrollChangedListener(treeListener);
+				viewTreeObserver.addOnTouchModeChangeListener(treeListener);
+				onTreeChanged(true);
+			}
+		}catch(Exception ignored){}
+	}
+
+	/**
+	 * Removes the tree listener from a {@code ViewTreeObserver}.
+	 *
+	 * @param viewTreeObserver the {@code ViewTreeObserver} to remove the listener from
+	 */
+
+	@SuppressWarnings("deprecation")
+	private void removeListeners(ViewTreeObserver viewTreeObserver) {
+		try{
+			if(viewTreeObserver.isAlive()){
+				viewTreeObserver.removeGlobalOnLayoutListener(treeListener);
+				viewTreeObserver.removeOnPreDrawListener(treeListener);
+				viewTreeObserver.removeOnGlobalFocusChangeListener(treeListener);
+				viewTreeObserver.removeOnScrollChangedListener(treeListener);
+				viewTreeObserver.removeOnTouchModeChangeListener(treeListener);
+			}
+		}catch(Exception ignored){}
+	}
+
+	/**
+	 * Listens to all the tree events that indicate a change of what is shown.
+	 */
+
+	private final class TreeListener implements ViewTreeObserver.OnGlobalLayoutListener,
+	ViewTreeObserver.OnPreDrawListener, ViewTreeObserver.OnGlobalFocusChangeListener,
+	ViewTreeObserver.OnScrollChangedListener, ViewTreeObserver.OnTouchModeChangeListener {
+
+		public void onGlobalLayout() {
+			onTreeChanged(true);
+		}
+
+		public boolean onPreDraw() {
+			onTreeChanged(false);
+			return true;
+		}
+
+		public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+			onTreeChanged(true);
+		}
+
+		public void onScrollChanged() {
+			onTreeChanged(true);
+		}
+
+		public void onTouchModeChanged(boolean isInTouchMode) {
+			onTreeChanged(true);
+		}
+	}
+}
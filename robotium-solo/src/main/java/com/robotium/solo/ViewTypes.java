@@ -0,0 +1,137 @@
+package com.robotium.solo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import android.view.View;
+import android.webkit.WebView;
+import android.widget.AbsListView;
+import android.widget.ScrollView;
+
+
+/**
+ * Caches the type checks on view classes that walk the superclass chain. The fixed traits of a
+ * class are computed once, and the result of each type name check is kept as one bit per class,
+ * so a repeated check is a map lookup and a bit test. Checks against a {@code Class} are not
+ * cached, since {@code Class.isAssignableFrom()} is already cheap.
+ */
+
+final class ViewTypes {
+
+	static final int SCROLL_OR_LIST_VIEW = 1;
+	private static final int MAX_CACHED_TYPE_NAMES = 64;
+	private static final ConcurrentHashMap<Class<?>, Traits> traitsByClass = new ConcurrentHashMap<Class<?>, Traits>();
+	private static final ConcurrentHashMap<String, Integer> bitsByTypeName = new ConcurrentHashMap<String, Integer>();
+
+
+	private ViewTypes() {
+
+	}
+
+	/**
+	 * Returns true if a view has the given fixed trait.
+	 *
+	 * @param view the view to check
+	 * @param trait a trait such as {@link #SCROLL_OR_LIST_VIEW}
+	 * @return true if the view is not {@code null} and has the trait
+	 */
+
+	static boolean is(View view, int trait) {
+		return view != null && (getTraits(view.getClass()).flags & trait) != 0;
+	}
+
+	/**
+	 * Returns true if a class, or one of its superclasses, has a name that contains the given type name.
+	 *
+	 * @param viewClass the class to check
+	 * @param typeName the type name, e.g. {@code "widget.RecyclerView"}
+	 * @return true if the class is of the given type
+	 */
+
+	static boolean isViewType(Class<?> viewClass, String typeName) {
+		final int bit = getBit(typeName);
+
+		if(bit < 0){
+			return isNamedType(viewClass, typeName);
+		}
+		final Traits traits = getTraits(viewClass);
+		final long mask = 1L << bit;
+
+		if((traits.checked & mask) != 0){
+			return (traits.matching & mask) != 0;
+		}
+		final boolean result = isNamedType(viewClass, typeName);
+
+		synchronized (traits) {
+			if(result){
+				traits.matching |= mask;
+			}
+			traits.checked |= mask;
+		}
+		return result;
+	}
+
+	private static boolean isNamedType(Class<?> aClass, String typeName) {
+		for(Class<?> currentClass = aClass; currentClass != null; currentClass = currentClass.getSuperclass()){
+			if(currentClass.getName().contains(typeName)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the bit of a type name, assigning the next free one the first time.
+	 *
+	 * @param typeName the type name
+	 * @return the bit or {@code -1} if all bits are taken and the type name is not cached
+	 */
+
+	private static int getBit(String typeName) {
+		Integer bit = bitsByTypeName.get(typeName);
+
+		if(bit != null){
+			return bit;
+		}
+		synchronized (bitsByTypeName) {
+			bit = bitsByTypeName.get(typeName);
+			if(bit == null){
+				if(bitsByTypeName.size() >= MAX_CACHED_TYPE_NAMES){
+					return -1;
+				}
+				bit = bitsByTypeName.size();
+				bitsByTypeName.put(typeName, bit);
+			}
+			return bit;
+		}
+	}
+
+	private static Traits getTraits(Class<?> viewClass) {
+		Traits traits = traitsByClass.get(viewClass);
+
+		if(traits == null){
+			int flags = 0;
+			if(AbsListView.class.isAssignableFrom(viewClass) || ScrollView.class.isAssignableFrom(viewClass) || WebView.class.isAssignableFrom(viewClass)){
+				flags |= SCROLL_OR_LIST_VIEW;
+			}
+			final Traits newTraits = new Traits(flags);
+			traits = traitsByClass.putIfAbsent(viewClass, newTraits);
+			if(traits == null){
+				traits = newTraits;
+			}
+		}
+		return traits;
+	}
+
+	/**
+	 * The cached type information of a class.
+	 */
+
+	private static final class Traits {
+		final int flags;
+		volatile long matching = 0;
+		volatile long checked = 0;
+
+		Traits(int flags) {
+			this.flags = flags;
+		}
+	}
+}
@@ -12,10 +12,12 @@ import android.app.Instrumentation;
 import android.app.Instrumentation.ActivityMonitor;
 import android.content.IntentFilter;
 import android.os.SystemClock;
+import android.util.Log;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.view.View;
 import android.widget.TextView;
+import com.robotium.solo.Solo.Config;
 
 
 /**
@@ -34,26 +36,84 @@ class Waiter {
 	private final Scroller scroller;
 	private final Sleeper sleeper;
 	private final Instrumentation instrumentation;
+	private final Config config;
+	private final ViewTreeWatcher viewTreeWatcher;
+	private final LogTailer logTailer;
+	private final IdlingResourceRegistry idlingResourceRegistry;
+	private final CrashWatcher crashWatcher;
+	private final WebUtils webUtils;
 
 
 	/**
 	 * Constructs this object.
 	 *
+	 * @param config the {@code Config} instance
 	 * @param instrumentation the {@code Instrumentation} object
 	 * @param activityUtils the {@code ActivityUtils} instance
 	 * @param viewFetcher the {@code ViewFetcher} instance
+	 * @param viewTreeWatcher the {@code ViewTreeWatcher} instance
 	 * @param searcher the {@code Searcher} instance
 	 * @param scroller the {@code Scroller} instance
 	 * @param sleeper the {@code Sleeper} instance
+	 * @param logTailer the {@code LogTailer} instance
+	 * @param idlingResourceRegistry the {@code IdlingResourceRegistry} instance
+	 * @param crashWatcher the {@code CrashWatcher} instance
+	 * @param webUtils the {@code WebUtils} instance
 	 */
 
-	public Waiter(Instrumentation instrumentation, ActivityUtils activityUtils, ViewFetcher viewFetcher, Searcher searcher, Scroller scroller, Sleeper sleeper){
+	public Waiter(Config config, Instrumentation instrumentation, ActivityUtils activityUtils, ViewFetcher viewFetcher, ViewTreeWatcher viewTreeWatcher, Searcher searcher, Scroller scroller, Sleeper sleeper, LogTailer logTailer, IdlingResourceRegistry idlingResourceRegistry, CrashWatcher crashWatcher, WebUtils webUtils){
+		this.config = config;
 		this.instrumentation = instrumentation;
 		this.activityUtils = activityUtils;
 		this.viewFetcher = viewFetcher;
+		this.viewTreeWatcher = viewTreeWatcher;
 		this.searcher = searcher;
 		this.scroller = scroller;
 		this.sleeper = sleeper;		
+		this.logTailer = logTailer;
+		this.idlingResourceRegistry = idlingResourceRegistry;
+		this.crashWatcher = crashWatcher;
+		this.webUtils = webUtils;
+	}
+
+	/**
+	 * Pauses before the next check in a wait loop. If a registered {@link IdlingResource} is busy
+	 * the pause lasts until all of them are idle or the end time is reached. Otherwise, if
+	 * {@link Config#wakeOnViewTreeChanges} is {@code true} the pause ends as soon as the view tree
+	 * has changed since the given generation, otherwise the backoff of the loop sleeps. The backoff
+	 * is reset when the layout of the view tree has changed since the previous pause, views that are
+	 * only redrawn do not reset it. Fails at once if the
+	 * {@code CrashWatcher} has seen a fatal error in the application under test.
+	 *
+	 * @param generation the view tree generation returned by the previous pause or {@link ViewTreeWatcher#NO_GENERATION}
+	 * @param endTime the uptime in milliseconds when the wait loop ends
+	 * @param backoff the {@code Sleeper.Backoff} of the wait loop
+	 * @return the view tree generation to use for the next pause
+	 */
+
+	private long pause(long generation, long endTime, Sleeper.Backoff backoff){
+		crashWatcher.checkForFatalError();
+
+		if(!idlingResourceRegistry.isIdle()){
+			idlingResourceRegistry.waitForIdle(endTime - SystemClock.uptimeMillis());
+			return generation;
+		}
+
+		if(!config.wakeOnViewTreeChanges){
+			if(config.sleepPolicy == null){
+				backoff.sleep();
+				return generation;
+			}
+			viewTreeWatcher.observe(viewFetcher.getWindowDecorViews());
+			long currentGeneration = viewTreeWatcher.getLayoutGeneration();
+			if(currentGeneration != generation){
+				backoff.reset();
+			}
+			backoff.sleep();
+			return currentGeneration;
+		}
+		viewTreeWatcher.observe(viewFetcher.getWindowDecorViews());
+		return viewTreeWatcher.waitForChange(generation, config.sleepDuration);
 	}
 
 	/**
@@ -78,6 +138,10 @@ class Waiter {
 	 */
 
 	public boolean waitForActivity(String name, int timeout){
+		if(activityUtils.isTrackingLifecycle()){
+			return waitForResumedActivity(name, null, timeout);
+		}
+
 		if(isActivityMatching(activityUtils.getCurrentActivity(false, false), name)){
 			return true;
 		}
@@ -85,18 +149,23 @@ class Waiter {
 		boolean foundActivity = false;
 		ActivityMonitor activityMonitor = getActivityMonitor();
 		long currentTime = SystemClock.uptimeMillis();
-		final long endTime = currentTime + timeout;
+		final long endTime = Deadline.getEndTime(timeout);
 
-		while(currentTime < endTime){
-			Activity currentActivity = activityMonitor.waitForActivityWithTimeout(endTime - currentTime);
-			
-			if(isActivityMatching(currentActivity, name)){
-				foundActivity = true;
-				break;
-			}	
-			currentTime = SystemClock.uptimeMillis();
+		try {
+			while(currentTime < endTime){
+				crashWatcher.checkForFatalError();
+				Activity currentActivity = activityMonitor.waitForActivityWithTimeout(Math.min(endTime - currentTime, config.sleepDuration));
+
+				if(isActivityMatching(currentActivity, name)){
+					foundActivity = true;
+					break;
+				}
+				currentTime = SystemClock.uptimeMillis();
+			}
+		}
+		finally {
+			removeMonitor(activityMonitor);
 		}
-		removeMonitor(activityMonitor);
 		return foundActivity;
 	}
 	
@@ -138,6 +207,10 @@ class Waiter {
 	 */
 
 	public boolean waitForActivity(Class<? extends Activity> activityClass, int timeout){
+		if(activityUtils.isTrackingLifecycle()){
+			return waitForResumedActivity(null, activityClass, timeout);
+		}
+
 		if(isActivityMatching(activityClass, activityUtils.getCurrentActivity(false, false))){
 			return true;
 		}
@@ -145,18 +218,23 @@ class Waiter {
 		boolean foundActivity = false;
 		ActivityMonitor activityMonitor = getActivityMonitor();
 		long currentTime = SystemClock.uptimeMillis();
-		final long endTime = currentTime + timeout;
+		final long endTime = Deadline.getEndTime(timeout);
 
-		while(currentTime < endTime){
-			Activity currentActivity = activityMonitor.waitForActivityWithTimeout(endTime - currentTime);
-			
-			if(currentActivity != null && currentActivity.getClass().equals(activityClass)) {
-				foundActivity = true;
-				break;
-			}		
-			currentTime = SystemClock.uptimeMillis();
+		try {
+			while(currentTime < endTime){
+				crashWatcher.checkForFatalError();
+				Activity currentActivity = activityMonitor.waitForActivityWithTimeout(Math.min(endTime - currentTime, config.sleepDuration));
+
+				if(currentActivity != null && currentActivity.getClass().equals(activityClass)) {
+					foundActivity = true;
+					break;
+				}
+				currentTime = SystemClock.uptimeMillis();
+			}
+		}
+		finally {
+			removeMonitor(activityMonitor);
 		}
-		removeMonitor(activityMonitor);
 		return foundActivity;
 	}
 	
@@ -175,6 +253,43 @@ class Waiter {
 		return false;
 	}
 	
+	/**
+	 * Waits for the given {@link Activity} to be the current and resumed Activity. Returns as soon as
+	 * the {@code ActivityRegistry} is notified that it has been resumed.
+	 *
+	 * @param name the name of the {@code Activity} to wait for or {@code null} if activityClass is given
+	 * @param activityClass the class of the {@code Activity} to wait for or {@code null} if name is given
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return {@code true} if {@code Activity} is resumed before the timeout and {@code false} if it is not
+	 */
+	private boolean waitForResumedActivity(String name, Class<? extends Activity> activityClass, int timeout){
+		final ActivityRegistry activityRegistry = activityUtils.getActivityRegistry();
+		final long endTime = Deadline.getEndTime(timeout);
+
+		while(true){
+			long changeCount = activityRegistry.getChangeCount();
+			Activity currentActivity = activityRegistry.getCurrentActivity();
+			boolean matching = (name != null) ? isActivityMatching(currentActivity, name) : isActivityMatching(activityClass, currentActivity);
+
+			if(matching && activityRegistry.isResumed(currentActivity)){
+				if(config.logActivityResumeLatency){
+					long latency = activityRegistry.getResumeLatency(currentActivity);
+					if(latency >= 0){
+						Log.d(config.commandLoggingTag, currentActivity.getClass().getSimpleName()+" resumed "+latency+" ms after it was created");
+					}
+				}
+				return true;
+			}
+
+			long timeLeft = endTime - SystemClock.uptimeMillis();
+			if(timeLeft <= 0){
+				return false;
+			}
+			crashWatcher.checkForFatalError();
+			activityRegistry.waitForChange(changeCount, Math.min(timeLeft, config.sleepDuration));
+		}
+	}
+
 	/**
 	 * Creates a new ActivityMonitor and returns it
 	 * 
@@ -211,12 +326,16 @@ class Waiter {
 
 	public <T extends View> boolean waitForView(final Class<T> viewClass, final int index, boolean sleep, boolean scroll){
 		Set<T> uniqueViews = new HashSet<T>();
+		final Sleeper.Backoff backoff = scroll ? sleeper.backoff(config.sleepMiniDuration) : sleeper.backoff();
 		boolean foundMatchingView;
 
 		while(true){
+			crashWatcher.checkForFatalError();
 
-			if(sleep)
-				sleeper.sleep();
+			if(sleep && !idlingResourceRegistry.isIdle())
+				idlingResourceRegistry.waitForIdle(Timeout.getSmallTimeout());
+			else if(sleep)
+				backoff.sleep();
 
 			foundMatchingView = searcher.searchFor(uniqueViews, viewClass, index);
 
@@ -243,11 +362,13 @@ class Waiter {
 
 	public <T extends View> boolean waitForView(final Class<T> viewClass, final int index, final int timeout, final boolean scroll){
 		Set<T> uniqueViews = new HashSet<T>();
-		final long endTime = SystemClock.uptimeMillis() + timeout;
+		final long endTime = Deadline.getEndTime(timeout);
+		long generation = ViewTreeWatcher.NO_GENERATION;
+		final Sleeper.Backoff backoff = sleeper.backoff();
 		boolean foundMatchingView;
 
 		while (SystemClock.uptimeMillis() < endTime) {
-			sleeper.sleep();
+			generation = pause(generation, endTime, backoff);
 
 			foundMatchingView =  searcher.searchFor(uniqueViews, viewClass, index);
 
@@ -271,14 +392,20 @@ class Waiter {
 	 */
 
 	public <T extends View> boolean  waitForViews(boolean scrollMethod, Class<? extends T>... classes) {
-		final long endTime = SystemClock.uptimeMillis() + Timeout.getSmallTimeout();
+		final long endTime = Deadline.getEndTime(Timeout.getSmallTimeout());
+		long generation = ViewTreeWatcher.NO_GENERATION;
+		final Sleeper.Backoff backoff = sleeper.backoff();
+		final ScreenCondition[] conditions = new ScreenCondition[classes.length];
+		final boolean[] satisfied = new boolean[classes.length];
+
+		for (int i = 0; i < classes.length; i++) {
+			conditions[i] = ScreenCondition.view(classes[i]);
+		}
 
 		while (SystemClock.uptimeMillis() < endTime) {
 
-			for (Class<? extends T> classToWaitFor : classes) {
-				if (waitForView(classToWaitFor, 0, false, false)) {
-					return true;
-				}
+			if (probe(conditions, satisfied, true) != -1) {
+				return true;
 			}
 			if(scrollMethod){
 				scroller.scroll(Scroller.DOWN);
@@ -286,12 +413,173 @@ class Waiter {
 			else {
 				scroller.scrollDown();
 			}
-			sleeper.sleep();
+			generation = pause(generation, endTime, backoff);
 		}
 		return false;
 	}
 
 
+	/**
+	 * Waits for any of the given conditions to be satisfied. All conditions are checked against
+	 * one traversal of the view tree each time they are checked.
+	 *
+	 * @param conditions the conditions to wait for
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return the index of the first satisfied condition or {@code -1} if none of them is satisfied before the timeout
+	 */
+
+	public int waitForAny(ScreenCondition[] conditions, int timeout) {
+		final long endTime = Deadline.getEndTime(timeout);
+		long generation = ViewTreeWatcher.NO_GENERATION;
+		final Sleeper.Backoff backoff = sleeper.backoff();
+		final boolean[] satisfied = new boolean[conditions.length];
+
+		while (true) {
+			int match = probe(conditions, satisfied, true);
+
+			if (match != -1) {
+				return match;
+			}
+			if (SystemClock.uptimeMillis() > endTime) {
+				return -1;
+			}
+			generation = pause(generation, endTime, backoff);
+		}
+	}
+
+	/**
+	 * Waits for all of the given conditions to be satisfied at the same time. All conditions are
+	 * checked against one traversal of the view tree each time they are checked.
+	 *
+	 * @param conditions the conditions to wait for
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return {@code true} if all conditions are satisfied and {@code false} if they are not satisfied before the timeout
+	 */
+
+	public boolean waitForAll(ScreenCondition[] conditions, int timeout) {
+		final long endTime = Deadline.getEndTime(timeout);
+		long generation = ViewTreeWatcher.NO_GENERATION;
+		final Sleeper.Backoff backoff = sleeper.backoff();
+		final boolean[] satisfied = new boolean[conditions.length];
+
+		while (true) {
+			probe(conditions, satisfied, false);
+
+			if (isAllSatisfied(satisfied)) {
+				return true;
+			}
+			if (SystemClock.uptimeMillis() > endTime) {
+				return false;
+			}
+			generation = pause(generation, endTime, backoff);
+		}
+	}
+
+	/**
+	 * Checks the given conditions once. The views of the view tree are fetched once and each view
+	 * is checked against all view conditions that are not yet satisfied. The other conditions are
+	 * checked in order afterwards.
+	 *
+	 * @param conditions the conditions to check
+	 * @param satisfied set to whether each condition is satisfied
+	 * @param stopAtFirst {@code true} if the other conditions should not be checked after a satisfied condition
+	 * @return the index of the first satisfied condition or {@code -1} if none of them is satisfied
+	 */
+
+	private int probe(ScreenCondition[] conditions, boolean[] satisfied, boolean stopAtFirst) {
+		int viewConditionsLeft = 0;
+
+		for (int i = 0; i < conditions.length; i++) {
+			satisfied[i] = false;
+			if (conditions[i].isViewCondition()) {
+				viewConditionsLeft++;
+			}
+		}
+
+		if (viewConditionsLeft > 0) {
+			for (View view : viewFetcher.getAllViews(true)) {
+				for (int i = 0; i < conditions.length; i++) {
+					if (!satisfied[i] && conditions[i].isViewCondition() && conditions[i].matches(view)) {
+						satisfied[i] = true;
+						viewConditionsLeft--;
+					}
+				}
+				if (viewConditionsLeft == 0) {
+					break;
+				}
+			}
+		}
+
+		for (int i = 0; i < conditions.length; i++) {
+			if (stopAtFirst && satisfied[i]) {
+				return i;
+			}
+			if (!conditions[i].isViewCondition()) {
+				satisfied[i] = conditions[i].isSatisfied(activityUtils, webUtils);
+				if (stopAtFirst && satisfied[i]) {
+					return i;
+				}
+			}
+		}
+		return firstSatisfied(satisfied);
+	}
+
+	private int firstSatisfied(boolean[] satisfied) {
+		for (int i = 0; i < satisfied.length; i++) {
+			if (satisfied[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isAllSatisfied(boolean[] satisfied) {
+		for (boolean conditionSatisfied : satisfied) {
+			if (!conditionSatisfied) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Waits for the screen to stop changing. The fingerprint of the shown windows is taken
+	 * repeatedly and the wait ends when it has stayed the same for the given quiet time.
+	 *
+	 * @param quietTime the amount of time in milliseconds that the screen must stay unchanged
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return {@code true} if the screen settled and {@code false} if it was still changing at the timeout
+	 */
+
+	public boolean waitForScreenToSettle(int quietTime, int timeout) {
+		final long endTime = Deadline.getEndTime(timeout);
+		final Sleeper.Backoff backoff = sleeper.backoff(Math.max(quietTime / 4, 1));
+		long fingerprint = viewFetcher.getFingerprint();
+		long unchangedSince = SystemClock.uptimeMillis();
+
+		while (true) {
+			crashWatcher.checkForFatalError();
+
+			final long now = SystemClock.uptimeMillis();
+			if (now - unchangedSince >= quietTime) {
+				return true;
+			}
+			if (now > endTime) {
+				return false;
+			}
+			backoff.sleepMini();
+
+			final long currentFingerprint = viewFetcher.getFingerprint();
+			if (currentFingerprint != fingerprint) {
+				fingerprint = currentFingerprint;
+				unchangedSince = SystemClock.uptimeMillis();
+				backoff.reset();
+			}
+		}
+	}
+
+
 	/**
 	 * Waits for a given view. Default timeout is 20 seconds.
 	 * 
@@ -332,7 +620,9 @@ class Waiter {
 	 */
 
 	public View waitForView(View view, int timeout, boolean scroll, boolean checkIsShown){
-		long endTime = SystemClock.uptimeMillis() + timeout;
+		long endTime = Deadline.getEndTime(timeout);
+		long generation = ViewTreeWatcher.NO_GENERATION;
+		final Sleeper.Backoff backoff = sleeper.backoff();
 		int retry = 0;
 		
 		if(view == null)
@@ -343,7 +633,7 @@ class Waiter {
 			final boolean foundAnyMatchingView = searcher.searchFor(view);
 
 			if(checkIsShown && foundAnyMatchingView && !view.isShown()){
-				sleeper.sleepMini();
+				backoff.sleepMini();
 				retry++;
 			
 				View identicalView = viewFetcher.getIdenticalView(view);
@@ -365,7 +655,7 @@ class Waiter {
 				scroller.scrollDown();
 			}
 
-			sleeper.sleep();
+			generation = pause(generation, endTime, backoff);
 
 		}
 		return view;
@@ -397,20 +687,18 @@ class Waiter {
 
 	public View waitForView(int id, int index, int timeout, boolean scroll){
 		Set<View> uniqueViewsMatchingId = new HashSet<View>();
-		long endTime = SystemClock.uptimeMillis() + timeout;
+		long endTime = Deadline.getEndTime(timeout);
+		long generation = ViewTreeWatcher.NO_GENERATION;
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
 		while (SystemClock.uptimeMillis() <= endTime) {
-			sleeper.sleep();
+			generation = pause(generation, endTime, backoff);
 
-			for (View view : viewFetcher.getAllViews(false)) {
-				Integer idOfView = Integer.valueOf(view.getId());
+			for (View view : viewFetcher.getViewsById(id)) {
+				uniqueViewsMatchingId.add(view);
 
-				if (idOfView.equals(id)) {
-					uniqueViewsMatchingId.add(view);
-
-					if(uniqueViewsMatchingId.size() > index) {
-						return view;
-					}
+				if(uniqueViewsMatchingId.size() > index) {
+					return view;
 				}
 			}
 			if(scroll) 
@@ -450,18 +738,18 @@ class Waiter {
 		}
 
 		Set<View> uniqueViewsMatchingId = new HashSet<View>();
-		long endTime = SystemClock.uptimeMillis() + timeout;
+		long endTime = Deadline.getEndTime(timeout);
+		long generation = ViewTreeWatcher.NO_GENERATION;
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
 		while (SystemClock.uptimeMillis() <= endTime) {
-			sleeper.sleep();
+			generation = pause(generation, endTime, backoff);
 
-			for (View view : viewFetcher.getAllViews(false)) {
-				if (tag.equals(view.getTag())) {
-					uniqueViewsMatchingId.add(view);
+			for (View view : viewFetcher.getViewsByTag(tag)) {
+				uniqueViewsMatchingId.add(view);
 
-					if(uniqueViewsMatchingId.size() > index) {
-						return view;
-					}
+				if(uniqueViewsMatchingId.size() > index) {
+					return view;
 				}
 			}
 			if(scroll) {
@@ -481,7 +769,9 @@ class Waiter {
 	 */
 
 	public WebElement waitForWebElement(final By by, int minimumNumberOfMatches, int timeout, boolean scroll){
-		final long endTime = SystemClock.uptimeMillis() + timeout;
+		final long endTime = Deadline.getEndTime(timeout);
+		long generation = ViewTreeWatcher.NO_GENERATION;
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
 		while (true) {	
 
@@ -491,7 +781,7 @@ class Waiter {
 				searcher.logMatchesFound(by.getValue());
 				return null;
 			}
-			sleeper.sleep();
+			generation = pause(generation, endTime, backoff);
 
 			WebElement webElementToReturn = searcher.searchForWebElement(by, minimumNumberOfMatches); 
 
@@ -513,7 +803,9 @@ class Waiter {
 	 * @return {@code true} if condition is satisfied and {@code false} if it is not satisfied before the timeout
 	 */
 	public boolean waitForCondition(Condition condition, int timeout){
-		final long endTime = SystemClock.uptimeMillis() + timeout;
+		final long endTime = Deadline.getEndTime(timeout);
+		long generation = ViewTreeWatcher.NO_GENERATION;
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
 		while (true) {
 			final boolean timedOut = SystemClock.uptimeMillis() > endTime;
@@ -521,7 +813,7 @@ class Waiter {
 				return false;
 			}
 
-			sleeper.sleep();
+			generation = pause(generation, endTime, backoff);
 
 			if (condition.isSatisfied()){
 				return true;
@@ -613,7 +905,9 @@ class Waiter {
 	 */
 
 	public <T extends TextView> T waitForText(Class<T> classToFilterBy, String text, int expectedMinimumNumberOfMatches, long timeout, boolean scroll, boolean onlyVisible, boolean hardStoppage) {
-		final long endTime = SystemClock.uptimeMillis() + timeout;
+		final long endTime = Deadline.getEndTime(timeout);
+		long generation = ViewTreeWatcher.NO_GENERATION;
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
 		while (true) {
 			final boolean timedOut = SystemClock.uptimeMillis() > endTime;
@@ -621,7 +915,7 @@ class Waiter {
 				return null;
 			}
 
-			sleeper.sleep();
+			generation = pause(generation, endTime, backoff);
 
 			if(!hardStoppage)
 				timeout = 0;
@@ -643,7 +937,7 @@ class Waiter {
 	 */
 
 	public <T extends View> T waitForAndGetView(int index, Class<T> classToFilterBy){
-		long endTime = SystemClock.uptimeMillis() + Timeout.getSmallTimeout();
+		long endTime = Deadline.getEndTime(Timeout.getSmallTimeout());
 		while (SystemClock.uptimeMillis() <= endTime && !waitForView(classToFilterBy, index, true, true));
 		int numberOfUniqueViews = searcher.getNumberOfUniqueViews();
 		ArrayList<T> views = RobotiumUtils.removeInvisibleViews(viewFetcher.getCurrentViews(classToFilterBy, true));
@@ -680,7 +974,7 @@ class Waiter {
 	 */
 
 	public boolean waitForFragment(String tag, int id, int timeout){
-		long endTime = SystemClock.uptimeMillis() + timeout;
+		long endTime = Deadline.getEndTime(timeout);
 		while (SystemClock.uptimeMillis() <= endTime) {
 
 			if(getSupportFragment(tag, id) != null)
@@ -728,15 +1022,27 @@ class Waiter {
 	 */
 
 	public boolean waitForLogMessage(String logMessage, int timeout){
+		long endTime = Deadline.getEndTime(timeout);
+
+		if(logTailer.start()){
+			if(logTailer.waitForMessage(logMessage, (int) Math.max(0, endTime - SystemClock.uptimeMillis()))){
+				return true;
+			}
+			if(logTailer.isRunning() || SystemClock.uptimeMillis() > endTime){
+				return false;
+			}
+		}
+
 		StringBuilder stringBuilder = new StringBuilder();
+		final Sleeper.Backoff backoff = sleeper.backoff();
 
-		long endTime = SystemClock.uptimeMillis() + timeout;
 		while (SystemClock.uptimeMillis() <= endTime) {
 
 			if(getLog(stringBuilder).lastIndexOf(logMessage) != -1){
 				return true;
 			}
-			sleeper.sleep();
+			crashWatcher.checkForFatalError();
+			backoff.sleep();
 		}
 		return false;
 	}
@@ -802,6 +1108,7 @@ class Waiter {
 	 */
 
 	public void clearLog(){
+		logTailer.mark();
 		Process p = null;
 		try {
 			p = Runtime.getRuntime().exec("logcat -c");
@@ -2,9 +2,11 @@ package com.robotium.solo;
 
 import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import android.os.SystemClock;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import android.webkit.WebView;
 
 /**
@@ -17,94 +19,160 @@ import android.webkit.WebView;
 
 class WebElementCreator {
 
-	private List<WebElement> webElements;
-	private Sleeper sleeper;
-	private boolean isFinished = false;
+	/**
+	 * Prefix of the prompt messages that contain a batch of web elements.
+	 */
+	public static final String BATCH_PREFIX = "robotium-batch:";
+
+	/**
+	 * Prefix of the prompt messages that tell that a request is finished.
+	 */
+	public static final String FINISHED_PREFIX = "robotium-finished:";
+
+	/**
+	 * Request id returned when no JavaScript was executed.
+	 */
+	public static final int NO_REQUEST = -1;
+
+	private static final char RECORD_SEPARATOR = '\u001e';
+	private static final char FIELD_SEPARATOR = '\u001f';
+	private static final char ATTRIBUTE_SEPARATOR = '\u001d';
+	private static final char VALUE_SEPARATOR = '\u001c';
+	private static final int NUMBER_OF_FIELDS = 10;
+	private static final int MAX_PENDING_REQUESTS = 16;
+	private static final int TIMEOUT = 5000;
+	private final Map<Integer, Request> requests;
+	private int lastRequestId = 0;
 
 	/**
 	 * Constructs this object.
-	 * 
-	 * @param sleeper the {@code Sleeper} instance
-	 * 
 	 */
 
-	public WebElementCreator(Sleeper sleeper){
-		this.sleeper = sleeper;
-		webElements = new CopyOnWriteArrayList<WebElement>();
+	public WebElementCreator(){
+		requests = new LinkedHashMap<Integer, Request>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Request> eldest) {
+				return size() > MAX_PENDING_REQUESTS;
+			}
+		};
 	}
 
 	/**
-	 * Prepares for start of creating {@code TextView} objects based on web elements 
+	 * Prepares for start of creating {@code WebElement} objects based on web elements.
+	 * Each call starts a new request with its own result list.
+	 * 
+	 * @param function the JavaScript function executed by the request
+	 * @return the id of the new request
 	 */
 
-	public void prepareForStart(){
-		setFinished(false);
-		webElements.clear();
+	public int prepareForStart(String function){
+		synchronized (requests) {
+			lastRequestId++;
+			requests.put(lastRequestId, new Request(function));
+			return lastRequestId;
+		}
 	}
 
 	/**
-	 * Returns an {@code ArrayList} of {@code TextView} objects based on the web elements shown
+	 * Returns the JavaScript function executed by a pending request.
 	 * 
-	 * @return an {@code ArrayList} of {@code TextView} objects based on the web elements shown
+	 * @param requestId the id of the request
+	 * @return the JavaScript function or {@code null} if there is no such pending request
 	 */
 
-	public ArrayList<WebElement> getWebElementsFromWebViews(){
-		waitForWebElementsToBeCreated();
-		return new ArrayList<WebElement>(webElements);
+	public String getFunction(int requestId){
+		final Request request = getRequest(requestId);
+		return request != null ? request.function : null;
 	}
 
 	/**
-	 * Returns true if all {@code TextView} objects based on web elements have been created
+	 * Returns an {@code ArrayList} of {@code WebElement} objects created by a request. Waits until
+	 * the request is finished or a timeout occurs.
 	 * 
-	 * @return true if all {@code TextView} objects based on web elements have been created
+	 * @param requestId the id of the request
+	 * @return an {@code ArrayList} of {@code WebElement} objects based on the web elements shown
 	 */
 
-	public boolean isFinished(){
-		return isFinished;
-	}
+	public ArrayList<WebElement> getWebElementsFromWebViews(int requestId){
+		final Request request = getRequest(requestId);
+
+		if(request == null){
+			return new ArrayList<WebElement>();
+		}
 
+		waitForWebElementsToBeCreated(request);
+		synchronized (requests) {
+			requests.remove(requestId);
+		}
+		return request.getWebElements();
+	}
 
 	/**
-	 * Set to true if all {@code TextView} objects have been created
+	 * Marks a request as finished from a {@link #FINISHED_PREFIX} message.
 	 * 
-	 * @param isFinished true if all {@code TextView} objects have been created
+	 * @param message the message prompted when the request is finished
 	 */
 
-	public void setFinished(boolean isFinished){
-		this.isFinished = isFinished;
+	public void setFinished(String message){
+		final Request request = getRequest(getRequestId(message, FINISHED_PREFIX.length(), message.length()));
+
+		if(request != null){
+			request.finished.countDown();
+		}
 	}
 
 	/**
-	 * Creates a {@ WebElement} object from the given text and {@code WebView}
+	 * Creates {@code WebElement} objects from a batch of web element data and adds them to the list of its request.
+	 * The batch starts with {@link #BATCH_PREFIX} and the request id, followed by one record per web element.
 	 * 
-	 * @param webData the data of the web element 
-	 * @param webView the {@code WebView} the text is shown in
+	 * @param webData the batch of web element data
+	 * @param webView the {@code WebView} the web elements are shown in
 	 */
 
-	public void createWebElementAndAddInList(String webData, WebView webView){
+	public void createWebElementsAndAddInList(String webData, WebView webView){
+		int recordStart = webData.indexOf(RECORD_SEPARATOR);
+		final Request request = getRequest(getRequestId(webData, BATCH_PREFIX.length(), recordStart == -1 ? webData.length() : recordStart));
 
-		WebElement webElement = createWebElementAndSetLocation(webData, webView);
+		if(request == null){
+			return;
+		}
+
+		final ArrayList<WebElement> createdWebElements = new ArrayList<WebElement>();
+		final float scale = webView.getScale();
+		final int[] locationOfWebViewXY = new int[2];
+		webView.getLocationOnScreen(locationOfWebViewXY);
+
+		while(recordStart != -1){
+			recordStart++;
+			int recordEnd = webData.indexOf(RECORD_SEPARATOR, recordStart);
+			if(recordEnd == -1){
+				recordEnd = webData.length();
+			}
 
-		if((webElement!=null)) 
-			webElements.add(webElement);
+			WebElement webElement = createWebElementAndSetLocation(webData, recordStart, recordEnd, scale, locationOfWebViewXY);
+			if(webElement != null){
+				createdWebElements.add(webElement);
+			}
+			recordStart = recordEnd < webData.length() ? recordEnd : -1;
+		}
+		request.addWebElements(createdWebElements);
 	}
 
 	/**
 	 * Sets the location of a {@code WebElement} 
 	 * 
 	 * @param webElement the {@code TextView} object to set location 
-	 * @param webView the {@code WebView} the text is shown in
+	 * @param scale the scale of the {@code WebView} the text is shown in
+	 * @param locationOfWebViewXY the location of the {@code WebView} the text is shown in
 	 * @param x the x location to set
 	 * @param y the y location to set
 	 * @param width the width to set
 	 * @param height the height to set
 	 */
 
-	private void setLocation(WebElement webElement, WebView webView, int x, int y, int width, int height ){
-		float scale = webView.getScale();
-		int[] locationOfWebViewXY = new int[2];
-		webView.getLocationOnScreen(locationOfWebViewXY);
-
+	private void setLocation(WebElement webElement, float scale, int[] locationOfWebViewXY, int x, int y, int width, int height ){
 		int locationX = (int) (locationOfWebViewXY[0] + (x + (Math.floor(width / 2))) * scale);
 		int locationY = (int) (locationOfWebViewXY[1] + (y + (Math.floor(height / 2))) * scale);
 
@@ -113,69 +181,165 @@ class WebElementCreator {
 	}
 
 	/**
-	 * Creates a {@code WebView} object 
+	 * Creates a {@code WebElement} object from one record of a batch, without splitting the batch into substrings first
 	 * 
-	 * @param information the data of the web element
-	 * @param webView the web view the text is shown in
+	 * @param webData the batch of web element data
+	 * @param start the start index of the record
+	 * @param end the end index of the record
+	 * @param scale the scale of the {@code WebView} the web element is shown in
+	 * @param locationOfWebViewXY the location of the {@code WebView} the web element is shown in
 	 * 
-	 * @return a {@code WebElement} object with a given text and location
+	 * @return a {@code WebElement} object with a given text and location or {@code null} if the record is malformed
 	 */
 
-	private WebElement createWebElementAndSetLocation(String information, WebView webView){
-		String[] data = information.split(";,");
-		String[] elements = null;
+	private WebElement createWebElementAndSetLocation(String webData, int start, int end, float scale, int[] locationOfWebViewXY){
+		final String[] data = new String[NUMBER_OF_FIELDS];
+		int fieldStart = start;
+
+		for(int i = 0; i < NUMBER_OF_FIELDS && fieldStart <= end; i++){
+			int fieldEnd = webData.indexOf(FIELD_SEPARATOR, fieldStart);
+			if(fieldEnd == -1 || fieldEnd > end || i == NUMBER_OF_FIELDS - 1){
+				fieldEnd = end;
+			}
+			data[i] = webData.substring(fieldStart, fieldEnd);
+			fieldStart = fieldEnd + 1;
+		}
+
+		if(data[4] == null){
+			return null;
+		}
+
 		int x = 0;
 		int y = 0;
 		int width = 0;
 		int height = 0;
-		Hashtable<String, String> attributes = new Hashtable<String, String>();
 		try{
-			x = Math.round(Float.valueOf(data[5]));
-			y = Math.round(Float.valueOf(data[6]));
-			width = Math.round(Float.valueOf(data[7]));
-			height = Math.round(Float.valueOf(data[8]));	
-			elements = data[9].split("\\#\\$");
+			x = Math.round(Float.parseFloat(data[5]));
+			y = Math.round(Float.parseFloat(data[6]));
+			width = Math.round(Float.parseFloat(data[7]));
+			height = Math.round(Float.parseFloat(data[8]));	
 		}catch(Exception ignored){}
 
-		if(elements != null) {
-			for (int index = 0; index < elements.length; index++){
-				String[] element = elements[index].split("::");
-				if (element.length > 1) {
-					attributes.put(element[0], element[1]);
-				} else {
-					attributes.put(element[0], element[0]);
-				}
+		WebElement webElement = new WebElement(data[0], data[1], data[2], data[3], data[4], getAttributes(data[9]));
+		setLocation(webElement, scale, locationOfWebViewXY, x, y, width, height);
+		return webElement;
+	}
+
+	/**
+	 * Returns the attributes of a web element
+	 * 
+	 * @param attributeData the attribute data of a web element or {@code null}
+	 * @return the attributes
+	 */
+
+	private Hashtable<String, String> getAttributes(String attributeData){
+		Hashtable<String, String> attributes = new Hashtable<String, String>();
+
+		if(attributeData == null || attributeData.length() == 0){
+			return attributes;
+		}
+
+		int attributeStart = 0;
+		while(attributeStart <= attributeData.length()){
+			int attributeEnd = attributeData.indexOf(ATTRIBUTE_SEPARATOR, attributeStart);
+			if(attributeEnd == -1){
+				attributeEnd = attributeData.length();
+			}
+
+			int valueStart = attributeData.indexOf(VALUE_SEPARATOR, attributeStart);
+			if(valueStart != -1 && valueStart + 1 < attributeEnd){
+				attributes.put(attributeData.substring(attributeStart, valueStart), attributeData.substring(valueStart + 1, attributeEnd));
+			}
+			else if(valueStart != -1 && valueStart < attributeEnd){
+				// An attribute without a value, e.g. disabled, maps to its own name
+				String attribute = attributeData.substring(attributeStart, valueStart);
+				attributes.put(attribute, attribute);
+			}
+			else{
+				String attribute = attributeData.substring(attributeStart, attributeEnd);
+				attributes.put(attribute, attribute);
 			}
+			attributeStart = attributeEnd + 1;
 		}
+		return attributes;
+	}
 
-		WebElement webElement = null;
+	/**
+	 * Returns the pending request with a given id.
+	 * 
+	 * @param requestId the id of the request
+	 * @return the request or {@code null} if there is no such pending request
+	 */
 
-		try{
-			webElement = new WebElement(data[0], data[1], data[2], data[3], data[4], attributes);
-			setLocation(webElement, webView, x, y, width, height);
-		}catch(Exception ignored) {}
+	private Request getRequest(int requestId){
+		synchronized (requests) {
+			return requests.get(requestId);
+		}
+	}
 
-		return webElement;
+	/**
+	 * Parses the request id of a prompted message.
+	 * 
+	 * @param message the message
+	 * @param prefix the prefix that precedes the id
+	 * @return the request id or {@link #NO_REQUEST} if the message has no valid id
+	 */
+
+	public int getRequestId(String message, String prefix){
+		return getRequestId(message, prefix.length(), message.length());
+	}
+
+	/**
+	 * Parses the request id of a prompted message.
+	 * 
+	 * @param message the message
+	 * @param start the start index of the id
+	 * @param end the end index of the id
+	 * @return the request id or {@link #NO_REQUEST} if the message has no valid id
+	 */
+
+	private int getRequestId(String message, int start, int end){
+		try{
+			return Integer.parseInt(message.substring(start, end));
+		}catch(Exception e){
+			return NO_REQUEST;
+		}
 	}
 
 	/**
-	 * Waits for {@code WebElement} objects to be created
+	 * Waits for the {@code WebElement} objects of a request to be created
 	 * 
+	 * @param request the request to wait for
 	 * @return true if successfully created before timout
 	 */
 
-	private boolean waitForWebElementsToBeCreated(){
-		final long endTime = SystemClock.uptimeMillis() + 5000;
+	private boolean waitForWebElementsToBeCreated(Request request){
+		try {
+			return request.finished.await(TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			return false;
+		}
+	}
 
-		while(SystemClock.uptimeMillis() < endTime){
+	/**
+	 * Holds the result of one execution of JavaScript.
+	 */
 
-			if(isFinished){
-				return true;
-			}
+	private static final class Request {
+		final CountDownLatch finished = new CountDownLatch(1);
+		final String function;
+		private final List<WebElement> webElements = new ArrayList<WebElement>();
 
-			sleeper.sleepMini();
+		Request(String function){
+			this.function = function;
+		}
+
+		synchronized void addWebElements(List<WebElement> createdWebElements){
+			webElements.addAll(createdWebElements);
 		}
-		return false;
-	}
 
+		synchronized ArrayList<WebElement> getWebElements(){
+			return new ArrayList<WebElement>(webElements);
+		}
+	}
 }
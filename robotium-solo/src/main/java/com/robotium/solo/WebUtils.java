@@ -5,8 +5,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
 import com.robotium.solo.Solo.Config;
 import android.app.Instrumentation;
 import android.webkit.WebChromeClient;
@@ -24,12 +25,19 @@ import android.widget.TextView;
 
 class WebUtils {
 
+	/**
+	 * Prefix of the prompt messages that ask for RobotiumWeb.js to be installed in the page.
+	 */
+	public static final String INSTALL_PREFIX = "robotium-install:";
+
 	private ViewFetcher viewFetcher;
 	private Instrumentation inst;
 	RobotiumWebClient robotiumWebCLient;
 	WebElementCreator webElementCreator;
 	WebChromeClient originalWebChromeClient = null;
 	private Config config;
+	private String javaScript;
+	private final Map<String, String> framedJavaScripts;
 
 
 	/**
@@ -38,15 +46,15 @@ class WebUtils {
 	 * @param config the {@code Config} instance
 	 * @param instrumentation the {@code Instrumentation} instance
 	 * @param viewFetcher the {@code ViewFetcher} 
-	 * @param sleeper the {@code Sleeper} instance
 	 */
 
-	public WebUtils(Config config, Instrumentation instrumentation, ViewFetcher viewFetcher, Sleeper sleeper){
+	public WebUtils(Config config, Instrumentation instrumentation, ViewFetcher viewFetcher){
 		this.config = config;
 		this.inst = instrumentation;
 		this.viewFetcher = viewFetcher;
-		webElementCreator = new WebElementCreator(sleeper);
-		robotiumWebCLient = new RobotiumWebClient(instrumentation, webElementCreator);
+		webElementCreator = new WebElementCreator();
+		robotiumWebCLient = new RobotiumWebClient(instrumentation, this, webElementCreator);
+		framedJavaScripts = new HashMap<String, String>();
 	}
 
 	/**
@@ -57,22 +65,23 @@ class WebUtils {
 	 */
 
 	public ArrayList<TextView> getTextViewsFromWebView(){
-		boolean javaScriptWasExecuted = executeJavaScriptFunction("allTexts();");	
+		int requestId = executeJavaScriptFunction("allTexts();");	
 
-		return createAndReturnTextViewsFromWebElements(javaScriptWasExecuted);	
+		return createAndReturnTextViewsFromWebElements(requestId);	
 	}
 
 	/**
 	 * Creates and returns TextView objects based on WebElements
 	 * 
+	 * @param requestId the id of the JavaScript request or {@link WebElementCreator#NO_REQUEST}
 	 * @return an ArrayList with TextViews
 	 */
 
-	private ArrayList <TextView> createAndReturnTextViewsFromWebElements(boolean javaScriptWasExecuted){
+	private ArrayList <TextView> createAndReturnTextViewsFromWebElements(int requestId){
 		ArrayList<TextView> webElementsAsTextViews = new ArrayList<TextView>();
 
-		if(javaScriptWasExecuted){
-			for(WebElement webElement : webElementCreator.getWebElementsFromWebViews()){
+		if(requestId != WebElementCreator.NO_REQUEST){
+			for(WebElement webElement : webElementCreator.getWebElementsFromWebViews(requestId)){
 				if(isWebElementSufficientlyShown(webElement)){
 					RobotiumTextView textView = new RobotiumTextView(inst.getContext(), webElement.getText(), webElement.getLocationX(), webElement.getLocationY());
 					webElementsAsTextViews.add(textView);
@@ -90,9 +99,9 @@ class WebUtils {
 	 */
 
 	public ArrayList<WebElement> getWebElements(boolean onlySufficientlyVisible){
-		boolean javaScriptWasExecuted = executeJavaScriptFunction("allWebElements();");
+		int requestId = executeJavaScriptFunction("allWebElements();");
 		
-		return getWebElements(javaScriptWasExecuted, onlySufficientlyVisible);
+		return getWebElements(requestId, onlySufficientlyVisible);
 	}
 
 	/**
@@ -104,31 +113,31 @@ class WebUtils {
 	 */
 
 	public ArrayList<WebElement> getWebElements(final By by, boolean onlySufficientlyVisbile){
-		boolean javaScriptWasExecuted = executeJavaScript(by, false);
+		int requestId = executeJavaScriptRequest(by, false);
 		
 		if(config.useJavaScriptToClickWebElements){
-			if(!javaScriptWasExecuted){
+			if(requestId == WebElementCreator.NO_REQUEST){
 				return new ArrayList<WebElement>();
 			}
-			return webElementCreator.getWebElementsFromWebViews();
+			return webElementCreator.getWebElementsFromWebViews(requestId);
 		}
 
-		return getWebElements(javaScriptWasExecuted, onlySufficientlyVisbile);
+		return getWebElements(requestId, onlySufficientlyVisbile);
 	}
 
 	/**
 	 * Returns the sufficiently shown WebElements
 	 * 
-	 * @param javaScriptWasExecuted true if JavaScript was executed
+	 * @param requestId the id of the JavaScript request or {@link WebElementCreator#NO_REQUEST}
 	 * @param onlySufficientlyVisible true if only sufficiently visible {@link WebElement} objects should be returned
 	 * @return the sufficiently shown WebElements
 	 */
 
-	private ArrayList<WebElement> getWebElements(boolean javaScriptWasExecuted, boolean onlySufficientlyVisbile){
+	private ArrayList<WebElement> getWebElements(int requestId, boolean onlySufficientlyVisbile){
 		ArrayList<WebElement> webElements = new ArrayList<WebElement>();
 
-		if(javaScriptWasExecuted){
-			for(WebElement webElement : webElementCreator.getWebElementsFromWebViews()){
+		if(requestId != WebElementCreator.NO_REQUEST){
+			for(WebElement webElement : webElementCreator.getWebElementsFromWebViews(requestId)){
 				if(!onlySufficientlyVisbile){
 					webElements.add(webElement);
 				}
@@ -147,15 +156,13 @@ class WebUtils {
 	 */
 
 	private String prepareForStartOfJavascriptExecution(List<WebView> webViews) {
-		webElementCreator.prepareForStart();
-
 		WebChromeClient currentWebChromeClient = getCurrentWebChromeClient();
 
 		if(currentWebChromeClient != null && !currentWebChromeClient.getClass().isAssignableFrom(RobotiumWebClient.class)){
 			originalWebChromeClient = currentWebChromeClient;	
 		}
 		robotiumWebCLient.enableJavascriptAndSetRobotiumWebClient(webViews, originalWebChromeClient);
-		return getJavaScriptAsString();
+		return getJavaScript(config.webFrame);
 	}
 	
 	/**
@@ -230,6 +237,18 @@ class WebUtils {
 	 */
 
 	public boolean executeJavaScript(final By by, boolean shouldClick){
+		return executeJavaScriptRequest(by, shouldClick) != WebElementCreator.NO_REQUEST;
+	}
+
+	/**
+	 * Executes JavaScript determined by the given By object
+	 * 
+	 * @param by the By object e.g. By.id("id");
+	 * @param shouldClick true if click should be performed
+	 * @return the id of the JavaScript request or {@link WebElementCreator#NO_REQUEST} if no JavaScript was executed
+	 */
+
+	private int executeJavaScriptRequest(final By by, boolean shouldClick){
 		if(by instanceof By.Id){
 			return executeJavaScriptFunction("id(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");");
 		}
@@ -251,44 +270,103 @@ class WebUtils {
 		else if(by instanceof By.TagName){
 			return executeJavaScriptFunction("tagName(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");");
 		}
-		return false;
+		return WebElementCreator.NO_REQUEST;
 	}
 
 	/**
 	 * Executes the given JavaScript function
 	 * 
 	 * @param function the function as a String
-	 * @return true if JavaScript function was executed
+	 * @return the id of the JavaScript request or {@link WebElementCreator#NO_REQUEST} if no JavaScript was executed
 	 */
 
-	private boolean executeJavaScriptFunction(final String function) {
+	private int executeJavaScriptFunction(final String function) {
 		List<WebView> webViews = viewFetcher.getCurrentViews(WebView.class, true);
 		final WebView webView = viewFetcher.getFreshestView((ArrayList<WebView>) webViews);
 		
 		if(webView == null) {
-			return false;
+			return WebElementCreator.NO_REQUEST;
 		}
 
-		final String javaScript = setWebFrame(prepareForStartOfJavascriptExecution(webViews));
+		final String frame = config.webFrame;
+		final String javaScript = prepareForStartOfJavascriptExecution(webViews);
+		final int requestId = webElementCreator.prepareForStart(function);
+		final String url;
+
+		if(config.installJavaScriptOnce){
+			url = "javascript:if(window.robotiumInstalled === \"" + frame + "\"){" + getFunctionCall(requestId, function)
+					+ "}else{prompt('" + INSTALL_PREFIX + requestId + "');}";
+		}
+		else{
+			url = "javascript:" + javaScript + getFunctionCall(requestId, function);
+		}
 		
 		inst.runOnMainSync(new Runnable() {
 			public void run() {
 				if(webView != null){
-					webView.loadUrl("javascript:" + javaScript + function);
+					webView.loadUrl(url);
 				}
 			}
 		});
-		return true;
+		return requestId;
+	}
+
+	/**
+	 * Installs RobotiumWeb.js in the page of a WebView and executes the function of a pending request.
+	 * Used when the page does not have RobotiumWeb.js installed, e.g. after a page navigation.
+	 * Must be called on the main thread.
+	 * 
+	 * @param webView the WebView to install RobotiumWeb.js in
+	 * @param requestId the id of the pending request
+	 */
+
+	public void installJavaScriptAndExecute(WebView webView, int requestId){
+		final String function = webElementCreator.getFunction(requestId);
+
+		if(function == null){
+			return;
+		}
+		final String frame = config.webFrame;
+		webView.loadUrl("javascript:" + getJavaScript(frame) + "window.robotiumInstalled = \"" + frame + "\";" + getFunctionCall(requestId, function));
+	}
+
+	/**
+	 * Returns the JavaScript that calls a function as part of a request.
+	 * 
+	 * @param requestId the id of the request
+	 * @param function the function as a String
+	 * @return the JavaScript that calls the function
+	 */
+
+	private String getFunctionCall(int requestId, String function){
+		return "robotiumRequestId = " + requestId + ";" + function;
+	}
+
+	/**
+	 * Returns RobotiumWeb.js rewritten for a given web frame. The rewritten JavaScript is created once per frame.
+	 * 
+	 * @param frame the web frame
+	 * @return RobotiumWeb.js rewritten for the web frame
+	 */
+
+	private String getJavaScript(String frame){
+		synchronized (framedJavaScripts) {
+			String framedJavaScript = framedJavaScripts.get(frame);
+
+			if(framedJavaScript == null){
+				framedJavaScript = setWebFrame(getJavaScriptAsString(), frame);
+				framedJavaScripts.put(frame, framedJavaScript);
+			}
+			return framedJavaScript;
+		}
 	}
 	
-	private String setWebFrame(String javascript){
-		String frame = config.webFrame;
-		
-		if(frame.isEmpty() || frame.equals("document")){
+	private String setWebFrame(String javascript, String frame){
+		if(frame.length() == 0 || frame.equals("document")){
 			return javascript;
 		}
-		javascript = javascript.replaceAll(Pattern.quote("document, "), "document.getElementById(\""+frame+"\").contentDocument, ");
-		javascript = javascript.replaceAll(Pattern.quote("document.body, "), "document.getElementById(\""+frame+"\").contentDocument, ");
+		javascript = javascript.replace("document, ", "document.getElementById(\""+frame+"\").contentDocument, ");
+		javascript = javascript.replace("document.body, ", "document.getElementById(\""+frame+"\").contentDocument, ");
 		return javascript;
 	}
 
@@ -337,14 +415,27 @@ class WebUtils {
 	}
 
 	/**
-	 * Returns the JavaScript file RobotiumWeb.js as a String
+	 * Returns the JavaScript file RobotiumWeb.js as a String. The file is only read once.
 	 *  
 	 * @return the JavaScript file RobotiumWeb.js as a {@code String} 
 	 */
 
 	private String getJavaScriptAsString() {
+		if(javaScript == null){
+			javaScript = readJavaScript();
+		}
+		return javaScript;
+	}
+
+	/**
+	 * Reads the JavaScript file RobotiumWeb.js
+	 *  
+	 * @return the JavaScript file RobotiumWeb.js as a {@code String} 
+	 */
+
+	private String readJavaScript() {
 		InputStream fis = getClass().getResourceAsStream("RobotiumWeb.js");
-		StringBuffer javaScript = new StringBuffer();
+		StringBuilder javaScript = new StringBuilder();
 
 		try {
 			BufferedReader input =  new BufferedReader(new InputStreamReader(fis));